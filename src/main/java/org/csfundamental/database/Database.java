@@ -11,6 +11,7 @@ import org.csfundamental.database.table.Schema;
 import org.csfundamental.database.table.Table;
 import org.csfundamental.database.table.databox.DataBox;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Optional;
@@ -108,12 +109,18 @@ public class Database implements AutoCloseable {
 
         @Override
         public void dropTable(String tableName) {
-
+            Table table = tables.remove(tableName);
+            if (table == null) {
+                throw new DatabaseException("Table " + tableName + " does not exist");
+            }
+            table.drop();
         }
 
         @Override
         public void dropAllTables() {
-
+            for (String tableName : new ArrayList<>(tables.keySet())) {
+                dropTable(tableName);
+            }
         }
 
         @Override
@@ -157,7 +164,9 @@ public class Database implements AutoCloseable {
 
         @Override
         public void update(String tableName, String targetColumnName, UnaryOperator<DataBox> targetValue) {
-
+            Table table = tables.get(tableName);
+            int column = table.getSchema().findField(targetColumnName);
+            table.updateRecordsWhere(r -> true, r -> r.withValue(column, targetValue.apply(r.getValue(column))));
         }
 
         @Override
@@ -167,7 +176,9 @@ public class Database implements AutoCloseable {
 
         @Override
         public void update(String tableName, String targetColumnName, Function<Record, DataBox> expr, Function<Record, DataBox> cond) {
-
+            Table table = tables.get(tableName);
+            int column = table.getSchema().findField(targetColumnName);
+            table.updateRecordsWhere(r -> cond.apply(r).getBool(), r -> r.withValue(column, expr.apply(r)));
         }
 
         @Override
@@ -177,7 +188,8 @@ public class Database implements AutoCloseable {
 
         @Override
         public void delete(String tableName, Function<Record, DataBox> cond) {
-
+            Table table = tables.get(tableName);
+            table.deleteRecordsWhere(r -> cond.apply(r).getBool());
         }
 
         @Override
@@ -2,6 +2,9 @@ package org.csfundamental.database.buffer;
 
 import org.csfundamental.database.storage.PageException;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * In-memory data structure that represents the loaded on-disk page.
  * */
@@ -12,7 +15,13 @@ public abstract class BufferFrame {
      * referenced counter.
      * The frame CANNOT be swapped out until the counter is zero.
      * */
-    private int pinCount = 0;
+    private final AtomicInteger pinCount = new AtomicInteger(0);
+
+    /**
+     * Latch of the page held by users of the frame across several reads and writes,
+     * unlike the lock of a single read or write.
+     * */
+    private final ReentrantLock latch = new ReentrantLock();
 
     /**
      * Pin buffer frame. Called before accessing data of this frame
@@ -23,24 +32,31 @@ public abstract class BufferFrame {
         if (!isValid()){
             throw new PageException("Cannot pin a invalid frame");
         }
-        ++pinCount;
+        pinCount.incrementAndGet();
     }
 
     /**
      * Unpin buffer frame. Called after accessing data of this frame
      */
     protected void unpin() {
-        if (!isPinned()) {
+        if (pinCount.getAndUpdate(count -> count > 0 ? count - 1 : count) <= 0) {
             throw new IllegalStateException("Cannot unpin an unpinned frame.");
         }
-        --pinCount;
+    }
+
+    void latch() {
+        latch.lock();
+    }
+
+    void unlatch() {
+        latch.unlock();
     }
 
     /**
      * @return whether this frame is pinned
      */
     boolean isPinned() {
-        return pinCount > 0;
+        return pinCount.get() > 0;
     }
 
     /**
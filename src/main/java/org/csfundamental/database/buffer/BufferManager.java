@@ -3,10 +3,31 @@ package org.csfundamental.database.buffer;
 import org.csfundamental.database.storage.DiskSpaceManager;
 import org.csfundamental.database.storage.PageException;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 
@@ -19,6 +40,13 @@ import java.util.function.BiConsumer;
  * Buffer manager follows the STEAL & NO-FORCE policy of ARIES recovery protocol for better performance.
  * STEAL:  Frames updated by a TRX can be swapped out before the TRX commit.
  * NO-FORCE: TRX commit will NOT force the Frames updated by the trx to be flushed immediately.
+ *
+ * Frames are divided into named pools (see createPool), each with its own LRU replacement.
+ * Every partition is assigned to one pool, the "default" pool unless assignPartition says
+ * otherwise, so that e.g. temp tables assigned to a small pool cannot evict index pages.
+ *
+ * The list of resident pages can be dumped to a file (see dumpResidentPages and enableDump)
+ * and loaded back after a restart (see loadResidentPages) to warm up the buffer pool.
  * */
 public class BufferManager implements AutoCloseable {
     // Reserve 36 bytes on each page to book keep info for recovery
@@ -26,19 +54,226 @@ public class BufferManager implements AutoCloseable {
     // fit on one page).
     public static final int RESERVED_SPACE = 36;
     public static final int EFFECTIVE_PAGE_SIZE = DiskSpaceManager.PAGE_SIZE - RESERVED_SPACE;
+    // How long a fetch waits for a pinned frame to be released by default.
+    public static final long DEFAULT_PIN_WAIT_TIMEOUT_MILLIS = 1000;
+
+    // Name of the pool caching the pages of partitions not assigned to any other pool.
+    public static final String DEFAULT_POOL = "default";
 
     private final DiskSpaceManager diskSpaceManager;
-    private final CacheStrategy cacheStrategy;
+    private final Map<String, BufferPool> pools;
+    private final Map<Integer, BufferPool> partitionPools;
+    // resident frames of each partition, guarded by managerLock
+    private final Map<Integer, Map<Long, Frame>> partitionFrames;
+    private final BufferPool defaultPool;
     private final ReentrantLock managerLock;
-    private long numIO;
+    // number of page reads and writes, counted without the manager lock
+    private final LongAdder numIO;
     private final Set<BufferFrame> invalidFrames;
+    private final int capacity;
+    private final BufferPoolStats stats;
+    private volatile long pinWaitTimeoutNanos;
+    private ObjectName mbeanName;
+    private volatile Path dumpFile;
+    private ScheduledExecutorService dumpScheduler;
 
     public BufferManager(DiskSpaceManager diskSpaceManager, int capacity){
         this.diskSpaceManager = diskSpaceManager;
-        this.cacheStrategy = new LRUCacheStrategy(capacity);
+        this.defaultPool = new BufferPool(DEFAULT_POOL, 0, capacity);
+        this.pools = new ConcurrentHashMap<>();
+        this.pools.put(DEFAULT_POOL, defaultPool);
+        this.partitionPools = new ConcurrentHashMap<>();
+        this.partitionFrames = new HashMap<>();
         this.managerLock = new ReentrantLock();
-        this.numIO = 0;
+        this.numIO = new LongAdder();
         this.invalidFrames = new HashSet<>();
+        this.capacity = capacity;
+        this.stats = new BufferPoolStats();
+        this.pinWaitTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_PIN_WAIT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Create a named pool of frames. Partitions assigned to the pool will only ever
+     * evict frames of the pool (or frames other pools hold above their minimum).
+     *
+     * @param name name of the pool.
+     * @param minFrames number of frames reserved for the pool.
+     * @param maxFrames maximum number of frames the pool may hold.
+     * */
+    public void createPool(String name, int minFrames, int maxFrames) {
+        managerLock.lock();
+        try {
+            if (pools.containsKey(name)) {
+                throw new IllegalArgumentException("Buffer pool " + name + " already exists.");
+            }
+            if (maxFrames > capacity) {
+                throw new IllegalArgumentException(String.format(
+                        "Buffer pool %s cannot hold more frames (%d) than the buffer manager (%d).", name, maxFrames, capacity));
+            }
+            int reserved = minFrames;
+            for (BufferPool pool : pools.values()) {
+                reserved += pool.getMinFrames();
+            }
+            if (reserved > capacity) {
+                throw new IllegalArgumentException(String.format(
+                        "Buffer pools reserve %d frames, more than the buffer manager capacity (%d).", reserved, capacity));
+            }
+            pools.put(name, new BufferPool(name, minFrames, maxFrames));
+        } finally {
+            managerLock.unlock();
+        }
+    }
+
+    /**
+     * Cache the pages of a partition in the named pool from now on. Resident pages
+     * of the partition are evicted from the pool previously caching them.
+     *
+     * @throws IllegalStateException if a page of the partition is pinned.
+     * */
+    public void assignPartition(int partNum, String poolName) {
+        managerLock.lock();
+        try {
+            BufferPool newPool = pools.get(poolName);
+            if (newPool == null) {
+                throw new IllegalArgumentException("No buffer pool named " + poolName);
+            }
+            BufferPool oldPool = poolOf(partNum);
+            if (oldPool == newPool) {
+                return;
+            }
+            List<Frame> frames = residentFrames(partNum);
+            for (Frame frame : frames) {
+                if (frame.isPinned()) {
+                    throw new IllegalStateException("Cannot reassign partition " + partNum + " with pinned pages.");
+                }
+            }
+            for (Frame frame : frames) {
+                removeFrame(frame);
+                frame.invalidate();
+                stats.recordEviction(partNum);
+            }
+            if (newPool == defaultPool) {
+                partitionPools.remove(partNum);
+            } else {
+                partitionPools.put(partNum, newPool);
+            }
+        } finally {
+            managerLock.unlock();
+        }
+    }
+
+    /**
+     * @return name of the pool caching the pages of the partition.
+     * */
+    public String getPoolName(int partNum) {
+        return poolOf(partNum).getName();
+    }
+
+    private BufferPool poolOf(int partNum) {
+        return partitionPools.getOrDefault(partNum, defaultPool);
+    }
+
+    private BufferPool poolOfPage(long pageNum) {
+        return poolOf(DiskSpaceManager.getPartNum(pageNum));
+    }
+
+    /**
+     * Caller must hold the manager lock.
+     * @return whether the pool may take a frame without evicting anything.
+     * */
+    private boolean hasFreeFrame(BufferPool pool) {
+        if (pool.size() >= pool.getMaxFrames()) {
+            return false;
+        }
+        int used = 0;
+        for (BufferPool other : pools.values()) {
+            used += other.size();
+            if (other != pool) {
+                used += other.unusedReservation();
+            }
+        }
+        return used < capacity;
+    }
+
+    /**
+     * Caller must hold the manager lock.
+     * @return unpinned frame to give up for a new page of the pool, or null if none.
+     * Frames above a pool's reservation are shared: the pool takes one from the pool
+     * borrowing the most frames if that is more than the pool itself borrows, and
+     * otherwise recycles its own least recently used frame.
+     * */
+    private BufferFrame chooseVictim(BufferPool pool) {
+        if (pool.size() < pool.getMaxFrames()) {
+            int borrowed = pool.size() - pool.getMinFrames();
+            BufferFrame victim = null;
+            for (BufferPool other : pools.values()) {
+                int otherBorrowed = other.size() - other.getMinFrames();
+                if (other != pool && other.canLendFrame() && otherBorrowed > borrowed) {
+                    BufferFrame candidate = other.getCacheStrategy().evict();
+                    if (candidate != null) {
+                        victim = candidate;
+                        borrowed = otherBorrowed;
+                    }
+                }
+            }
+            if (victim != null) {
+                return victim;
+            }
+        }
+        BufferFrame victim = pool.getCacheStrategy().evict();
+        if (victim != null || pool.size() >= pool.getMaxFrames()) {
+            return victim;
+        }
+        // all own frames are pinned, take any frame lent out by others
+        for (BufferPool other : pools.values()) {
+            if (other != pool && other.canLendFrame()) {
+                victim = other.getCacheStrategy().evict();
+                if (victim != null) {
+                    return victim;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Caller must hold the manager lock.
+     * */
+    private void addFrame(BufferPool pool, Frame frame) {
+        pool.getCacheStrategy().put(frame.getPageNum(), frame);
+        partitionFrames.computeIfAbsent(DiskSpaceManager.getPartNum(frame.getPageNum()), k -> new HashMap<>())
+                .put(frame.getPageNum(), frame);
+    }
+
+    /**
+     * Caller must hold the manager lock.
+     * */
+    private void removeFrame(BufferFrame frame) {
+        long pageNum = frame.getPageNum();
+        int partNum = DiskSpaceManager.getPartNum(pageNum);
+        poolOf(partNum).getCacheStrategy().remove(pageNum);
+        Map<Long, Frame> frames = partitionFrames.get(partNum);
+        if (frames != null) {
+            frames.remove(pageNum);
+            if (frames.isEmpty()) {
+                partitionFrames.remove(partNum);
+            }
+        }
+    }
+
+    /**
+     * Caller must hold the manager lock.
+     * @return copy of the resident frames of the partition.
+     * */
+    private List<Frame> residentFrames(int partNum) {
+        Map<Long, Frame> frames = partitionFrames.get(partNum);
+        return frames == null ? new ArrayList<>() : new ArrayList<>(frames.values());
+    }
+
+    private void notifyFrameUnpinned() {
+        for (BufferPool pool : pools.values()) {
+            pool.getPinWaitQueue().frameUnpinned();
+        }
     }
 
     /**
@@ -85,6 +320,18 @@ public class BufferManager implements AutoCloseable {
         return this.frameToPage(this.fetchPageFrame(page, true));
     }
 
+    /**
+     * Fetches a page object for a new on disk page with the given page number, which
+     * must be free, e.g. to keep a page number across truncatePart.
+     *
+     * @param pageNum virtual page number of the new page
+     * @return pinned buffer frame for the new page
+     */
+    public Page fetchNewPageAt(long pageNum) {
+        long page = diskSpaceManager.allocPage(pageNum);
+        return this.frameToPage(this.fetchPageFrame(page, true));
+    }
+
     /**
      * Fetches a buffer frame for an allocated page.
      * @param pageNum The virtual page number.
@@ -92,29 +339,86 @@ public class BufferManager implements AutoCloseable {
      * @return buffer frame which must be pinned to prevent being swapped out.
      */
     private BufferFrame fetchPageFrame(long pageNum, boolean newAllocated) {
+        long start = System.nanoTime();
+        int partNum = DiskSpaceManager.getPartNum(pageNum);
+        try {
+            return doFetchPageFrame(pageNum, newAllocated);
+        } finally {
+            stats.recordFetchTime(partNum, System.nanoTime() - start);
+        }
+    }
+
+    private BufferFrame doFetchPageFrame(long pageNum, boolean newAllocated) {
         Frame newFrame;
         Frame evictedFrame;
-        managerLock.lock();
-        try{
-            if (!diskSpaceManager.pageAllocated(pageNum)){
-                throw new PageException("Cannot fetch an unallocated page.");
+        int partNum = DiskSpaceManager.getPartNum(pageNum);
+        BufferPool pool = poolOf(partNum);
+        PinWaitQueue pinWaitQueue = pool.getPinWaitQueue();
+        long ticket = -1;
+        long deadline = 0;
+        long waitStart = 0;
+        try {
+            while (true) {
+                long observedEpoch;
+                managerLock.lock();
+                try{
+                    if (!diskSpaceManager.pageAllocated(pageNum)){
+                        throw new PageException("Cannot fetch an unallocated page.");
+                    }
+                    newFrame = (Frame)pool.getCacheStrategy().get(pageNum);
+                    if (newFrame != null){
+                        // cache hit, then just return the frame
+                        newFrame.pin();
+                        stats.recordHit(partNum);
+                        return newFrame;
+                    }
+                    // queue behind earlier waiters, unless we are the one being served
+                    boolean queued = ticket == -1 && pinWaitQueue.hasWaiters();
+                    BufferFrame victim = null;
+                    if (!queued && (hasFreeFrame(pool) || (victim = chooseVictim(pool)) != null)){
+                        // cache miss, either because the frame was previously swapped out or this is a newly allocated page
+                        stats.recordMiss(partNum);
+                        if (victim != null){
+                            removeFrame(victim);
+                        }
+                        evictedFrame = (Frame)victim;
+                        byte[] data = new byte[DiskSpaceManager.PAGE_SIZE];
+                        newFrame = new Frame(data, pageNum);
+                        // lock before the frame can be found in the cache, so that a concurrent
+                        // cache hit cannot read the frame before it is loaded
+                        newFrame.frameLock.lock();
+                        addFrame(pool, newFrame);
+                        // pin before releasing the manager lock so that the new frame is not chosen as a victim
+                        newFrame.pin();
+                        break;
+                    }
+                    // either every frame is pinned, or others are already waiting for one
+                    observedEpoch = queued ? -1 : pinWaitQueue.epoch();
+                }finally {
+                    managerLock.unlock();
+                }
+
+                if (ticket == -1){
+                    ticket = pinWaitQueue.takeTicket();
+                    deadline = PinWaitQueue.deadline(pinWaitTimeoutNanos, TimeUnit.NANOSECONDS);
+                    waitStart = System.nanoTime();
+                    stats.recordFrameWait(partNum);
+                }
+                if (!awaitFrame(pinWaitQueue, ticket, observedEpoch, deadline)){
+                    stats.recordFrameWaitTimeout(partNum);
+                    throw new IllegalStateException("All frames are pinned.");
+                }
             }
-            newFrame = (Frame)cacheStrategy.get(pageNum);
-            if (newFrame != null){
-                // cache hit, then just return the frame
-                newFrame.pin();
-                return newFrame;
+        } finally {
+            if (ticket != -1){
+                stats.recordFrameWaitTime(partNum, System.nanoTime() - waitStart);
+                pinWaitQueue.release(ticket);
             }
-            // cache miss, either because the frame was previously swapped out or this is a newly allocated page
-            byte[] data = new byte[DiskSpaceManager.PAGE_SIZE];
-            newFrame = new Frame(data, pageNum);
-            evictedFrame = (Frame)cacheStrategy.put(pageNum,newFrame);
-        }finally {
-            managerLock.unlock();
         }
 
         if (evictedFrame != null){
-            evictedFrame.frameLock.lock();
+            stats.recordEviction(DiskSpaceManager.getPartNum(evictedFrame.getPageNum()));
+            lockFrame(evictedFrame);
             try{
                 evictedFrame.invalidate();
                 invalidFrames.add(evictedFrame);
@@ -123,9 +427,7 @@ public class BufferManager implements AutoCloseable {
             }
         }
 
-        newFrame.frameLock.lock();
         try{
-            newFrame.pin();
             if (newAllocated){
                 // newly allocated page on-disk, so no load action needed.
                 return newFrame;
@@ -134,11 +436,45 @@ public class BufferManager implements AutoCloseable {
             diskSpaceManager.readPage(pageNum, newFrame.content);
             this.incrementNumIO();
             return newFrame;
+        }catch (RuntimeException e){
+            newFrame.unpin();
+            throw e;
         }finally {
             newFrame.frameLock.unlock();
         }
     }
 
+    private boolean awaitFrame(PinWaitQueue pinWaitQueue, long ticket, long observedEpoch, long deadline) {
+        try {
+            return pinWaitQueue.await(ticket, observedEpoch, deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PageException(e);
+        }
+    }
+
+    /**
+     * Sets how long a fetch waits for a frame to be unpinned when every frame is pinned,
+     * before failing with IllegalStateException. Zero fails immediately.
+     * */
+    public void setPinWaitTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("pin wait timeout cannot be negative");
+        }
+        this.pinWaitTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Acquire the frame lock, counting a pin wait when another thread holds it
+     * (e.g. it is still being read in or flushed).
+     * */
+    private void lockFrame(Frame frame) {
+        if (!frame.frameLock.tryLock()) {
+            stats.recordPinWait(DiskSpaceManager.getPartNum(frame.getPageNum()));
+            frame.frameLock.lock();
+        }
+    }
+
     /**
      * Frees a page - evicts the page from cache, and tells the disk space manager
      * that the page is no longer needed. Page must be pinned before this call,
@@ -153,10 +489,10 @@ public class BufferManager implements AutoCloseable {
     private void freePage(long pageNum){
         managerLock.lock();
         try{
-            BufferFrame frame = cacheStrategy.get(pageNum);
+            BufferFrame frame = poolOfPage(pageNum).getCacheStrategy().get(pageNum);
             frame.flush();
             frame.invalidate(); //should not allow any action after deallocate
-            cacheStrategy.remove(pageNum);
+            removeFrame(frame);
             diskSpaceManager.freePage(pageNum);
         }finally {
             managerLock.unlock();
@@ -164,16 +500,19 @@ public class BufferManager implements AutoCloseable {
 
     }
 
+    /**
+     * Frees a partition: drops the resident frames of the partition without flushing them, and tells the disk
+     * space manager to free the partition with all of its pages.
+     * Only frames of the partition are visited, regardless of the size of the buffer pool.
+     *
+     * @param partNum partition to free
+     * */
     public void freePart(int partNum) {
         managerLock.lock();
         try{
-            // TODO: evict all pages in this partition
-            Iterator<BufferFrame> itr = cacheStrategy.getAllPageFrames().iterator();
-            while(itr.hasNext()){
-                BufferFrame frame = itr.next();
-                if (DiskSpaceManager.getPartNum(frame.getPageNum()) == partNum){
-                    this.freePage(frame.getPageNum());
-                }
+            for (Frame frame : residentFrames(partNum)){
+                removeFrame(frame);
+                frame.discard(); //should not allow any action after deallocate
             }
             diskSpaceManager.freePart(partNum);
         }finally {
@@ -182,41 +521,338 @@ public class BufferManager implements AutoCloseable {
     }
 
     /**
+     * Frees all the pages of a partition in one operation, keeping the partition number:
+     * drops the resident frames of the partition without flushing them, frees the partition
+     * and allocates an empty partition with the same number.
      *
+     * @param partNum partition to truncate
+     * */
+    public void truncatePart(int partNum) {
+        managerLock.lock();
+        try{
+            for (Frame frame : residentFrames(partNum)){
+                removeFrame(frame);
+                frame.discard();
+            }
+            diskSpaceManager.freePart(partNum);
+            diskSpaceManager.allocPart(partNum);
+        }finally {
+            managerLock.unlock();
+        }
+    }
+
+    /**
+     * Evicts the page if it is resident and unpinned, flushing it if dirty.
      * */
     public void evict(long page) {
         managerLock.lock();
-        BufferFrame frame = cacheStrategy.get(page);
-        if (frame != null && !frame.isPinned()){
-            cacheStrategy.remove(page);
-            frame.invalidate();
+        try{
+            BufferFrame frame = poolOfPage(page).getCacheStrategy().get(page);
+            if (frame != null){
+                evictFrame(frame);
+            }
+        }finally {
+            managerLock.unlock();
         }
-        managerLock.unlock();
     }
 
+    /**
+     * Evicts every unpinned page of the partition, visiting only frames of the partition.
+     * */
+    public void evictPart(int partNum) {
+        managerLock.lock();
+        try{
+            for (Frame frame : residentFrames(partNum)){
+                evictFrame(frame);
+            }
+        }finally {
+            managerLock.unlock();
+        }
+    }
+
+    /**
+     * Evicts every unpinned page, under a single acquisition of the manager lock.
+     * */
     public void evictAll() {
-        for(BufferFrame frame  : cacheStrategy.getAllPageFrames()){
-            evict(frame.getPageNum());
+        managerLock.lock();
+        try{
+            for (Map<Long, Frame> frames : new ArrayList<>(partitionFrames.values())){
+                for (Frame frame : new ArrayList<>(frames.values())){
+                    evictFrame(frame);
+                }
+            }
+        }finally {
+            managerLock.unlock();
         }
     }
 
+    /**
+     * Caller must hold the manager lock.
+     * */
+    private void evictFrame(BufferFrame frame) {
+        if (frame.isPinned()){
+            return;
+        }
+        removeFrame(frame);
+        frame.invalidate();
+        stats.recordEviction(DiskSpaceManager.getPartNum(frame.getPageNum()));
+    }
+
     public void iteratePagesByPageNumber(BiConsumer<Long, Boolean> process) {
 
     }
 
     /**
-     * Private method. Called should guarantee thread-safety
+     * Thread-safe: I/O is counted with or without the manager lock held.
      * */
     private void incrementNumIO(){
-        ++numIO;
+        numIO.increment();
     }
 
     long getNumIOs() {
-        return numIO;
+        return numIO.sum();
     }
 
-    public void close() {
+    /**
+     * @return hit/miss/eviction counters of this buffer manager, broken down per partition.
+     * */
+    public BufferPoolStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return maximum number of frames cached by this buffer manager.
+     * */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of pages currently held in buffer frames.
+     * */
+    public int getNumResidentPages() {
+        managerLock.lock();
+        try {
+            int numPages = 0;
+            for (BufferPool pool : pools.values()) {
+                numPages += pool.size();
+            }
+            return numPages;
+        } finally {
+            managerLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of pages currently held in frames of the named pool.
+     * */
+    public int getNumResidentPages(String poolName) {
+        managerLock.lock();
+        try {
+            BufferPool pool = pools.get(poolName);
+            if (pool == null) {
+                throw new IllegalArgumentException("No buffer pool named " + poolName);
+            }
+            return pool.size();
+        } finally {
+            managerLock.unlock();
+        }
+    }
+
+    /**
+     * Expose the counters of this buffer manager through JMX under
+     * org.csfundamental.database:type=BufferPool,name={name}. Unregistered on close.
+     *
+     * @param name name distinguishing this buffer manager from others of the same process.
+     * */
+    public void registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("org.csfundamental.database:type=BufferPool,name=" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(), objectName);
+            this.mbeanName = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register buffer pool MBean " + name, e);
+        }
+    }
+
+    private void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(mbeanName)) {
+                server.unregisterMBean(mbeanName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to unregister buffer pool MBean " + mbeanName, e);
+        } finally {
+            mbeanName = null;
+        }
+    }
+
+    /**
+     * Write the virtual page numbers of all resident pages to the file, replacing it atomically.
+     * Page contents are not written: they are read back from disk by loadResidentPages.
+     *
+     * @return number of page numbers written.
+     * */
+    public int dumpResidentPages(Path file) {
+        long[] pageNums;
+        managerLock.lock();
+        try {
+            pageNums = partitionFrames.values().stream()
+                    .flatMap(frames -> frames.keySet().stream())
+                    .mapToLong(Long::longValue)
+                    .toArray();
+        } finally {
+            managerLock.unlock();
+        }
+
+        try {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+                out.writeInt(pageNums.length);
+                for (long pageNum : pageNums) {
+                    out.writeLong(pageNum);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new PageException("Failed to dump resident pages to " + file + ". " + e.getMessage());
+        }
+        return pageNums.length;
+    }
+
+    /**
+     * Load the pages listed by dumpResidentPages into free frames, unpinned.
+     * Pages are read in physical order, with one read per run of consecutive pages.
+     * Pages that are no longer allocated or already resident are skipped, and loading
+     * stops once a pool has no free frame: pages already resident are never evicted.
+     *
+     * @return number of pages loaded, 0 if the file does not exist.
+     * */
+    public int loadResidentPages(Path file) {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long[] pageNums;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            pageNums = new long[in.readInt()];
+            for (int i = 0; i < pageNums.length; i++) {
+                pageNums[i] = in.readLong();
+            }
+        } catch (EOFException e) {
+            throw new PageException("Truncated resident page dump " + file);
+        } catch (IOException e) {
+            throw new PageException("Failed to load resident pages from " + file + ". " + e.getMessage());
+        }
+        Arrays.sort(pageNums);
+
+        int numLoaded = 0;
+        int i = 0;
+        while (i < pageNums.length) {
+            // extend the run while pages are consecutive and within the same partition
+            int j = i + 1;
+            while (j < pageNums.length && pageNums[j] == pageNums[j - 1] + 1
+                    && DiskSpaceManager.getPartNum(pageNums[j]) == DiskSpaceManager.getPartNum(pageNums[i])) {
+                j++;
+            }
+            numLoaded += loadRun(pageNums, i, j);
+            i = j;
+        }
+        return numLoaded;
+    }
+
+    private int loadRun(long[] pageNums, int from, int to) {
+        // drop pages freed since the dump, splitting the run around them
+        int start = from;
+        int numLoaded = 0;
+        for (int i = from; i <= to; i++) {
+            if (i == to || !isAllocated(pageNums[i])) {
+                if (i > start) {
+                    numLoaded += loadPages(pageNums[start], i - start);
+                }
+                start = i + 1;
+            }
+        }
+        return numLoaded;
+    }
+
+    private boolean isAllocated(long pageNum) {
+        try {
+            return diskSpaceManager.pageAllocated(pageNum);
+        } catch (NoSuchElementException | PageException e) {
+            // partition was freed since the dump
+            return false;
+        }
+    }
+
+    /**
+     * Reads the pages with the manager lock held: a page that is not resident cannot be
+     * fetched, written and evicted between the read and the install of its frame, and
+     * evictions flush dirty pages before they return, so the bytes read are current.
+     * */
+    private int loadPages(long firstPage, int numPages) {
+        byte[][] data = new byte[numPages][DiskSpaceManager.PAGE_SIZE];
+        int numLoaded = 0;
+        managerLock.lock();
+        try {
+            diskSpaceManager.readPages(firstPage, data);
+            this.incrementNumIO();
+            BufferPool pool = poolOfPage(firstPage);
+            for (int i = 0; i < numPages; i++) {
+                long pageNum = firstPage + i;
+                if (pool.getCacheStrategy().get(pageNum) != null) {
+                    continue;
+                }
+                if (!hasFreeFrame(pool)) {
+                    break;
+                }
+                addFrame(pool, new Frame(data[i], pageNum));
+                numLoaded++;
+            }
+        } finally {
+            managerLock.unlock();
+        }
+        return numLoaded;
+    }
 
+    /**
+     * Dump the resident pages to the file on close.
+     * */
+    public void enableDump(Path file) {
+        this.dumpFile = file;
+    }
+
+    /**
+     * Dump the resident pages to the file on close, and every period in between,
+     * so that a crash loses at most one period of warm-up information.
+     * */
+    public synchronized void enableDump(Path file, long period, TimeUnit unit) {
+        enableDump(file);
+        if (dumpScheduler != null) {
+            dumpScheduler.shutdownNow();
+        }
+        dumpScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "buffer-pool-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumpScheduler.scheduleAtFixedRate(() -> dumpResidentPages(file), period, period, unit);
+    }
+
+    public void close() {
+        unregisterMBean();
+        synchronized (this) {
+            if (dumpScheduler != null) {
+                dumpScheduler.shutdownNow();
+                dumpScheduler = null;
+            }
+        }
+        if (dumpFile != null) {
+            dumpResidentPages(dumpFile);
+        }
     }
 
     /**
@@ -228,6 +864,87 @@ public class BufferManager implements AutoCloseable {
         return new Page(frame);
     }
 
+    private class MXBean implements BufferPoolMXBean {
+        @Override
+        public int getCapacity() {
+            return BufferManager.this.getCapacity();
+        }
+
+        @Override
+        public int getNumResidentPages() {
+            return BufferManager.this.getNumResidentPages();
+        }
+
+        @Override
+        public long getNumIOs() {
+            return BufferManager.this.getNumIOs();
+        }
+
+        @Override
+        public long getHits() {
+            return stats.snapshot().getHits();
+        }
+
+        @Override
+        public long getMisses() {
+            return stats.snapshot().getMisses();
+        }
+
+        @Override
+        public double getHitRatio() {
+            return stats.snapshot().getHitRatio();
+        }
+
+        @Override
+        public long getEvictions() {
+            return stats.snapshot().getEvictions();
+        }
+
+        @Override
+        public long getDirtyFlushes() {
+            return stats.snapshot().getDirtyFlushes();
+        }
+
+        @Override
+        public long getPinWaits() {
+            return stats.snapshot().getPinWaits();
+        }
+
+        @Override
+        public long getFetchNanos() {
+            return stats.snapshot().getFetchNanos();
+        }
+
+        @Override
+        public long getFrameWaits() {
+            return stats.snapshot().getFrameWaits();
+        }
+
+        @Override
+        public long getFrameWaitTimeouts() {
+            return stats.snapshot().getFrameWaitTimeouts();
+        }
+
+        @Override
+        public long getFrameWaitNanos() {
+            return stats.snapshot().getFrameWaitNanos();
+        }
+
+        @Override
+        public int getNumFrameWaiters() {
+            long numWaiters = 0;
+            for (BufferPool pool : pools.values()) {
+                numWaiters += pool.getPinWaitQueue().numWaiters();
+            }
+            return (int) numWaiters;
+        }
+
+        @Override
+        public void resetStats() {
+            stats.reset();
+        }
+    }
+
     class Frame extends BufferFrame {
         private byte[] content;
         private final long pageNum;
@@ -262,6 +979,14 @@ public class BufferManager implements AutoCloseable {
             return pageNum;
         }
 
+        @Override
+        protected void unpin() {
+            super.unpin();
+            if (!isPinned()) {
+                BufferManager.this.notifyFrameUnpinned();
+            }
+        }
+
         @Override
         void flush() {
             frameLock.lock();
@@ -272,6 +997,7 @@ public class BufferManager implements AutoCloseable {
                 }
                 BufferManager.this.diskSpaceManager.writePage(this.pageNum, this.content);
                 BufferManager.this.incrementNumIO();
+                BufferManager.this.stats.recordDirtyFlush(DiskSpaceManager.getPartNum(this.pageNum));
                 this.dirty = false;
             }finally {
                 unpin();
@@ -335,6 +1061,21 @@ public class BufferManager implements AutoCloseable {
             this.content = null;
         }
 
+        /**
+         * The frame is marked invalid without being flushed, for a page whose content is
+         * thrown away, e.g. a page of a freed partition.
+         * */
+        void discard(){
+            frameLock.lock();
+            try{
+                this.dirty = false;
+                this.isValid = false;
+                this.content = null;
+            }finally {
+                frameLock.unlock();
+            }
+        }
+
         @Override
         boolean isValid(){
             return isValid;
@@ -0,0 +1,69 @@
+package org.csfundamental.database.buffer;
+
+/**
+ * A named share of the buffer manager's frames with its own replacement policy.
+ *
+ * A pool never holds more than maxFrames frames, and minFrames of the buffer manager's
+ * capacity are reserved for it: other pools cannot grow into the reservation, nor
+ * steal frames from this pool while it holds no more than minFrames.
+ * Pages of a partition are always cached in the pool the partition is assigned to.
+ *
+ * Not thread-safe: guarded by the buffer manager lock, except for the wait queue.
+ * */
+class BufferPool {
+    private final String name;
+    private final int minFrames;
+    private final int maxFrames;
+    private final CacheStrategy cacheStrategy;
+    private final PinWaitQueue pinWaitQueue;
+
+    BufferPool(String name, int minFrames, int maxFrames) {
+        if (minFrames < 0 || maxFrames <= 0 || minFrames > maxFrames) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid frame quota [%d, %d] for buffer pool %s", minFrames, maxFrames, name));
+        }
+        this.name = name;
+        this.minFrames = minFrames;
+        this.maxFrames = maxFrames;
+        this.cacheStrategy = new LRUCacheStrategy(maxFrames);
+        this.pinWaitQueue = new PinWaitQueue();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getMinFrames() {
+        return minFrames;
+    }
+
+    int getMaxFrames() {
+        return maxFrames;
+    }
+
+    CacheStrategy getCacheStrategy() {
+        return cacheStrategy;
+    }
+
+    PinWaitQueue getPinWaitQueue() {
+        return pinWaitQueue;
+    }
+
+    int size() {
+        return cacheStrategy.size();
+    }
+
+    /**
+     * @return number of reserved frames this pool is not using yet.
+     * */
+    int unusedReservation() {
+        return Math.max(0, minFrames - size());
+    }
+
+    /**
+     * @return whether another pool may take one of this pool's frames.
+     * */
+    boolean canLendFrame() {
+        return size() > minFrames;
+    }
+}
@@ -0,0 +1,37 @@
+package org.csfundamental.database.buffer;
+
+/**
+ * JMX view of a buffer manager. Values are totals over all partitions since the
+ * last reset. Registered by BufferManager#registerMBean.
+ * */
+public interface BufferPoolMXBean {
+    int getCapacity();
+
+    int getNumResidentPages();
+
+    long getNumIOs();
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRatio();
+
+    long getEvictions();
+
+    long getDirtyFlushes();
+
+    long getPinWaits();
+
+    long getFetchNanos();
+
+    long getFrameWaits();
+
+    long getFrameWaitTimeouts();
+
+    long getFrameWaitNanos();
+
+    int getNumFrameWaiters();
+
+    void resetStats();
+}
@@ -0,0 +1,245 @@
+package org.csfundamental.database.buffer;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Lock-free counters of buffer pool activity, broken down per partition.
+ *
+ * Counters are only ever incremented by the buffer manager; readers take an
+ * immutable Snapshot. A snapshot is not atomic across counters (each counter is
+ * read independently), which is good enough for sizing and monitoring.
+ * */
+public class BufferPoolStats {
+    private final Map<Integer, Counters> partCounters;
+
+    BufferPoolStats() {
+        this.partCounters = new ConcurrentHashMap<>();
+    }
+
+    void recordHit(int partNum) {
+        counters(partNum).hits.increment();
+    }
+
+    void recordMiss(int partNum) {
+        counters(partNum).misses.increment();
+    }
+
+    void recordEviction(int partNum) {
+        counters(partNum).evictions.increment();
+    }
+
+    void recordDirtyFlush(int partNum) {
+        counters(partNum).dirtyFlushes.increment();
+    }
+
+    void recordPinWait(int partNum) {
+        counters(partNum).pinWaits.increment();
+    }
+
+    void recordFetchTime(int partNum, long nanos) {
+        counters(partNum).fetchNanos.add(nanos);
+    }
+
+    void recordFrameWait(int partNum) {
+        counters(partNum).frameWaits.increment();
+    }
+
+    void recordFrameWaitTimeout(int partNum) {
+        counters(partNum).frameWaitTimeouts.increment();
+    }
+
+    void recordFrameWaitTime(int partNum, long nanos) {
+        counters(partNum).frameWaitNanos.add(nanos);
+    }
+
+    private Counters counters(int partNum) {
+        Counters counters = partCounters.get(partNum);
+        if (counters == null) {
+            counters = partCounters.computeIfAbsent(partNum, k -> new Counters());
+        }
+        return counters;
+    }
+
+    /**
+     * @return point-in-time copy of all the counters.
+     * */
+    public Snapshot snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     * Take a snapshot and reset every counter to zero, so that consecutive calls
+     * report the activity in between.
+     * */
+    public Snapshot snapshotAndReset() {
+        return snapshot(true);
+    }
+
+    /**
+     * Reset every counter to zero.
+     * */
+    public void reset() {
+        for (Counters counters : partCounters.values()) {
+            counters.read(true);
+        }
+    }
+
+    private Snapshot snapshot(boolean reset) {
+        Map<Integer, PartitionSnapshot> parts = new TreeMap<>();
+        for (Map.Entry<Integer, Counters> entry : partCounters.entrySet()) {
+            parts.put(entry.getKey(), entry.getValue().read(reset));
+        }
+        return new Snapshot(parts);
+    }
+
+    private static class Counters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final LongAdder dirtyFlushes = new LongAdder();
+        final LongAdder pinWaits = new LongAdder();
+        final LongAdder fetchNanos = new LongAdder();
+        final LongAdder frameWaits = new LongAdder();
+        final LongAdder frameWaitTimeouts = new LongAdder();
+        final LongAdder frameWaitNanos = new LongAdder();
+
+        PartitionSnapshot read(boolean reset) {
+            return new PartitionSnapshot(read(hits, reset), read(misses, reset), read(evictions, reset),
+                    read(dirtyFlushes, reset), read(pinWaits, reset), read(fetchNanos, reset),
+                    read(frameWaits, reset), read(frameWaitTimeouts, reset), read(frameWaitNanos, reset));
+        }
+
+        private static long read(LongAdder counter, boolean reset) {
+            return reset ? counter.sumThenReset() : counter.sum();
+        }
+    }
+
+    /**
+     * Counter values of a single partition.
+     * */
+    public static class PartitionSnapshot {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long dirtyFlushes;
+        private final long pinWaits;
+        private final long fetchNanos;
+        private final long frameWaits;
+        private final long frameWaitTimeouts;
+        private final long frameWaitNanos;
+
+        PartitionSnapshot(long hits, long misses, long evictions, long dirtyFlushes, long pinWaits,
+                          long fetchNanos, long frameWaits, long frameWaitTimeouts, long frameWaitNanos) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.dirtyFlushes = dirtyFlushes;
+            this.pinWaits = pinWaits;
+            this.fetchNanos = fetchNanos;
+            this.frameWaits = frameWaits;
+            this.frameWaitTimeouts = frameWaitTimeouts;
+            this.frameWaitNanos = frameWaitNanos;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getDirtyFlushes() {
+            return dirtyFlushes;
+        }
+
+        public long getPinWaits() {
+            return pinWaits;
+        }
+
+        /**
+         * @return total time spent in fetching page frames, in nanoseconds.
+         * */
+        public long getFetchNanos() {
+            return fetchNanos;
+        }
+
+        /**
+         * @return number of fetches that had to wait because every frame was pinned.
+         * */
+        public long getFrameWaits() {
+            return frameWaits;
+        }
+
+        /**
+         * @return number of fetches that gave up waiting for an unpinned frame.
+         * */
+        public long getFrameWaitTimeouts() {
+            return frameWaitTimeouts;
+        }
+
+        /**
+         * @return total time spent waiting for an unpinned frame, in nanoseconds.
+         * */
+        public long getFrameWaitNanos() {
+            return frameWaitNanos;
+        }
+
+        /**
+         * @return hits / (hits + misses), or 0 if nothing has been fetched.
+         * */
+        public double getHitRatio() {
+            long fetches = hits + misses;
+            return fetches == 0 ? 0.0 : (double) hits / fetches;
+        }
+    }
+
+    /**
+     * Point-in-time copy of the counters of all partitions, plus their totals.
+     * */
+    public static class Snapshot extends PartitionSnapshot {
+        private final Map<Integer, PartitionSnapshot> partitions;
+
+        Snapshot(Map<Integer, PartitionSnapshot> partitions) {
+            super(sum(partitions, PartitionSnapshot::getHits), sum(partitions, PartitionSnapshot::getMisses),
+                    sum(partitions, PartitionSnapshot::getEvictions), sum(partitions, PartitionSnapshot::getDirtyFlushes),
+                    sum(partitions, PartitionSnapshot::getPinWaits), sum(partitions, PartitionSnapshot::getFetchNanos),
+                    sum(partitions, PartitionSnapshot::getFrameWaits), sum(partitions, PartitionSnapshot::getFrameWaitTimeouts),
+                    sum(partitions, PartitionSnapshot::getFrameWaitNanos));
+            this.partitions = Collections.unmodifiableMap(partitions);
+        }
+
+        /**
+         * @return counters keyed by partition number. Partitions without any activity are absent.
+         * */
+        public Map<Integer, PartitionSnapshot> getPartitions() {
+            return partitions;
+        }
+
+        /**
+         * @return counters of the partition, all zero if the partition has no activity.
+         * */
+        public PartitionSnapshot getPartition(int partNum) {
+            PartitionSnapshot part = partitions.get(partNum);
+            return part == null ? new PartitionSnapshot(0, 0, 0, 0, 0, 0, 0, 0, 0) : part;
+        }
+
+        private static long sum(Map<Integer, PartitionSnapshot> partitions,
+                                ToLongFunction<PartitionSnapshot> counter) {
+            long total = 0;
+            for (PartitionSnapshot part : partitions.values()) {
+                total += counter.applyAsLong(part);
+            }
+            return total;
+        }
+    }
+}
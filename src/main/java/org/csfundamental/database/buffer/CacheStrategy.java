@@ -14,18 +14,27 @@ public interface CacheStrategy {
     BufferFrame get(long page);
 
     /**
-     * Choose a buffer frame which has not been pinned to evict.
+     * Put the frame into the cache, evicting an unpinned frame if the cache is full.
+     * Throws IllegalStateException if the cache is full and every frame is pinned.
      *
      * @return the evicted buffer frame if any.
      */
     BufferFrame put(long page, BufferFrame frame);
 
     /**
-     * Evict the oldest unpinned frame.
+     * Choose the oldest unpinned frame as the victim of the next eviction.
+     * The frame stays in cache.
+     *
+     * @return victim frame, or null if every cached frame is pinned.
      * */
     BufferFrame evict();
 
     void remove(long page);
 
     Iterable<BufferFrame> getAllPageFrames();
+
+    /**
+     * @return number of frames currently cached.
+     * */
+    int size();
 }
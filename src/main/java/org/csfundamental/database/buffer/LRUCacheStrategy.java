@@ -78,7 +78,11 @@ public class LRUCacheStrategy implements CacheStrategy {
         }else{
             if (pageTagMap.size() == capacity){
                 // TODO: improve the linear search here
-                oldTag = (Tag)evict().tag;
+                BufferFrame victim = evict();
+                if (victim == null){
+                    throw new IllegalStateException("All frames are pinned.");
+                }
+                oldTag = (Tag)victim.tag;
                 remove(oldTag.page);
             }
         }
@@ -94,7 +98,7 @@ public class LRUCacheStrategy implements CacheStrategy {
             tag = tag.next;
         }
         if (tag == tail){
-            throw new IllegalStateException("All frames are pinned.");
+            return null;
         }
         return tag.frame;
     }
@@ -110,6 +114,11 @@ public class LRUCacheStrategy implements CacheStrategy {
         return pageTagMap.values().stream().map(tag -> tag.frame).collect(Collectors.toList());
     }
 
+    @Override
+    public int size() {
+        return pageTagMap.size();
+    }
+
     private void removeTag(Tag tag){
         Tag prev = tag.prev;
         Tag next = tag.next;
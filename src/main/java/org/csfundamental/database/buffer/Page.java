@@ -84,6 +84,18 @@ public class Page {
         this.frame.unpin();
     }
 
+    /**
+     * Exclusively latch the page, e.g. for a read-modify-write of its content by
+     * concurrent writers. The page must be pinned until it is unlatched.
+     * */
+    public void latch(){
+        this.frame.latch();
+    }
+
+    public void unlatch(){
+        this.frame.unlatch();
+    }
+
     public void flush(){
         this.frame.flush();
     }
@@ -0,0 +1,135 @@
+package org.csfundamental.database.buffer;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * FIFO admission of fetchers waiting for a frame to become evictable.
+ *
+ * A fetcher that cannot find an unpinned victim takes a ticket and waits until
+ * its ticket is served and some frame has been unpinned since it last looked.
+ * Tickets are served in order, so a waiter is not starved by later fetchers:
+ * while anyone is queued, new fetchers must queue as well (see hasWaiters).
+ *
+ * The queue lock is a leaf lock: it is never held while acquiring the manager
+ * lock or a frame lock, so unpin may signal from any context.
+ * */
+class PinWaitQueue {
+    private final ReentrantLock queueLock;
+    private final Condition frameUnpinned;
+    /**
+     * Incremented each time a frame becomes unpinned. Waiters compare it with the
+     * value they observed when they failed to find a victim.
+     * */
+    private final AtomicLong unpinEpoch;
+    private final AtomicLong nextTicket;
+    private final AtomicLong servingTicket;
+    /**
+     * Tickets given up before being served, skipped when the queue advances.
+     * */
+    private final Set<Long> abandonedTickets;
+
+    PinWaitQueue() {
+        this.queueLock = new ReentrantLock(true);
+        this.frameUnpinned = queueLock.newCondition();
+        this.unpinEpoch = new AtomicLong(0);
+        this.nextTicket = new AtomicLong(0);
+        this.servingTicket = new AtomicLong(0);
+        this.abandonedTickets = new HashSet<>();
+    }
+
+    /**
+     * @return current unpin epoch, to be passed to await.
+     * */
+    long epoch() {
+        return unpinEpoch.get();
+    }
+
+    boolean hasWaiters() {
+        return nextTicket.get() != servingTicket.get();
+    }
+
+    /**
+     * @return approximate number of queued fetchers, including abandoned tickets not yet skipped.
+     * */
+    long numWaiters() {
+        return nextTicket.get() - servingTicket.get();
+    }
+
+    /**
+     * Called whenever a frame's pin count drops to zero.
+     * */
+    void frameUnpinned() {
+        unpinEpoch.incrementAndGet();
+        if (!hasWaiters()) {
+            return;
+        }
+        queueLock.lock();
+        try {
+            frameUnpinned.signalAll();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    long takeTicket() {
+        queueLock.lock();
+        try {
+            return nextTicket.getAndIncrement();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Block until the ticket is at the head of the queue and the unpin epoch moved
+     * past observedEpoch.
+     *
+     * @param deadline System.nanoTime() by which to give up.
+     * @return false if the deadline passed first.
+     * */
+    boolean await(long ticket, long observedEpoch, long deadline) throws InterruptedException {
+        queueLock.lock();
+        try {
+            while (servingTicket.get() != ticket || unpinEpoch.get() == observedEpoch) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                frameUnpinned.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Leave the queue, whether or not the ticket was served, letting the next waiter in.
+     * */
+    void release(long ticket) {
+        queueLock.lock();
+        try {
+            if (servingTicket.get() == ticket) {
+                long next = ticket + 1;
+                while (abandonedTickets.remove(next)) {
+                    next++;
+                }
+                servingTicket.set(next);
+            } else {
+                abandonedTickets.add(ticket);
+            }
+            frameUnpinned.signalAll();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    static long deadline(long timeout, TimeUnit unit) {
+        return System.nanoTime() + unit.toNanos(timeout);
+    }
+}
@@ -1,5 +1,10 @@
 package org.csfundamental.database.common;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
 /**
  * Utilities for getting, setting, and counting bits within a byte or array of
  * bytes.
@@ -7,6 +12,9 @@ package org.csfundamental.database.common;
 public class Bits {
     public enum Bit { ZERO, ONE }
 
+    // reads 8 bytes as a long whose most significant bit is the bit of the lowest index
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
     /**
      * Get the ith bit of a byte where the 0th bit is the most significant bit
      * and the 7th bit is the least significant bit. Some examples:
@@ -94,14 +102,108 @@ public class Bits {
         return count;
     }
 
-    public static int indexOfFirstZeroBit(byte[] bytes){
-        for (int i = 0; i < bytes.length; i++){
-            for (int j = 0; j < Byte.SIZE; j++){
-                if (getBit(bytes[i], j) == Bit.ZERO){
-                    return i * Byte.SIZE + j;
-                }
+    /**
+     * @return the wordIndex-th 64 bits of the array, with bit i of the array at bit
+     * (63 - i % 64) of the word. Bytes past the end of the array read as zeros.
+     */
+    private static long getWord(byte[] bytes, int wordIndex) {
+        int start = wordIndex * Long.BYTES;
+        if (start + Long.BYTES <= bytes.length) {
+            return (long) LONG_VIEW.get(bytes, start);
+        }
+        long word = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            word <<= Byte.SIZE;
+            if (start + i < bytes.length) {
+                word |= Byte.toUnsignedLong(bytes[start + i]);
+            }
+        }
+        return word;
+    }
+
+    /**
+     * @return index of the first set bit in [fromIndex, toIndex), or -1 if there is none.
+     * Bits are scanned a 64 bit word at a time. For example:
+     *
+     *   - nextSetBit(new byte[]{0b00000000, 0b00100000}, 0, 16) == 10
+     *   - nextSetBit(new byte[]{0b00000000, 0b00100000}, 0, 10) == -1
+     */
+    public static int nextSetBit(byte[] bytes, int fromIndex, int toIndex) {
+        return nextBit(bytes, fromIndex, toIndex, false);
+    }
+
+    /**
+     * @return index of the first unset bit in [fromIndex, toIndex), or -1 if there is none.
+     */
+    public static int nextClearBit(byte[] bytes, int fromIndex, int toIndex) {
+        return nextBit(bytes, fromIndex, toIndex, true);
+    }
+
+    private static int nextBit(byte[] bytes, int fromIndex, int toIndex, boolean clear) {
+        toIndex = Math.min(toIndex, bytes.length * Byte.SIZE);
+        int i = fromIndex;
+        while (i < toIndex) {
+            int wordIndex = i / Long.SIZE;
+            long word = getWord(bytes, wordIndex);
+            if (clear) {
+                word = ~word;
             }
+            // ignore the bits before i
+            word &= -1L >>> (i % Long.SIZE);
+            if (word != 0) {
+                int index = wordIndex * Long.SIZE + Long.numberOfLeadingZeros(word);
+                return index < toIndex ? index : -1;
+            }
+            i = (wordIndex + 1) * Long.SIZE;
         }
         return -1;
     }
+
+    /**
+     * Counts the number of set bits in [fromIndex, toIndex).
+     */
+    public static int countBits(byte[] bytes, int fromIndex, int toIndex) {
+        int count = 0;
+        int i = fromIndex;
+        while (i < toIndex) {
+            int wordIndex = i / Long.SIZE;
+            int wordEnd = Math.min((wordIndex + 1) * Long.SIZE, toIndex);
+            long word = getWord(bytes, wordIndex);
+            // keep the bits [i, wordEnd) of the word
+            word &= -1L >>> (i % Long.SIZE);
+            word &= -1L << ((wordIndex + 1) * Long.SIZE - wordEnd);
+            count += Long.bitCount(word);
+            i = wordEnd;
+        }
+        return count;
+    }
+
+    /**
+     * Set the bits in [fromIndex, toIndex) of a byte array, a whole byte at a
+     * time except at both ends of the range.
+     */
+    public static void setBits(byte[] bytes, int fromIndex, int toIndex, Bit bit) {
+        if (fromIndex >= toIndex) {
+            return;
+        }
+        int firstByte = fromIndex / Byte.SIZE;
+        int lastByte = (toIndex - 1) / Byte.SIZE;
+        int firstMask = 0xFF >>> (fromIndex % Byte.SIZE);
+        int lastMask = (0xFF << (Byte.SIZE - 1 - (toIndex - 1) % Byte.SIZE)) & 0xFF;
+        if (firstByte == lastByte) {
+            setMasked(bytes, firstByte, firstMask & lastMask, bit);
+            return;
+        }
+        setMasked(bytes, firstByte, firstMask, bit);
+        Arrays.fill(bytes, firstByte + 1, lastByte, bit == Bit.ONE ? (byte) 0xFF : 0);
+        setMasked(bytes, lastByte, lastMask, bit);
+    }
+
+    private static void setMasked(byte[] bytes, int index, int mask, Bit bit) {
+        bytes[index] = (byte) (bit == Bit.ONE ? bytes[index] | mask : bytes[index] & ~mask);
+    }
+
+    public static int indexOfFirstZeroBit(byte[] bytes){
+        return nextClearBit(bytes, 0, bytes.length * Byte.SIZE);
+    }
 }
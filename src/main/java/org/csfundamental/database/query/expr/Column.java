@@ -19,7 +19,10 @@ public class Column extends Expression {
 
     @Override
     public DataBox evaluate(Record record) {
-        this.index = this.schema.findField(this.name);
+        if (this.index == null) {
+            this.index = this.schema.findField(this.name);
+        }
+        // only the referenced field is materialized for a PackedRecord
         return record.getValue(index);
     }
 }
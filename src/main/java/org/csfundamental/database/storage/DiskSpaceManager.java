@@ -65,6 +65,19 @@ public interface DiskSpaceManager extends AutoCloseable {
      * */
     void readPage(long page, byte[] data);
 
+    /**
+     * Read consecutive pages into the byte arrays in memory, data[i] receiving page + i.
+     * Implementations should serve a run of pages with as few large reads as possible.
+     *
+     * @param page virtual page number of the first page.
+     * @param data page-sized byte arrays to save page bytes.
+     * */
+    default void readPages(long page, byte[][] data) {
+        for (int i = 0; i < data.length; i++) {
+            readPage(page + i, data[i]);
+        }
+    }
+
     /**
      * Write the data byte array into the specified page on disk
      *
@@ -94,7 +94,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
 
         part.partLock.lock();
         try{
-            part.freeAllPages();
+            // the file is deleted: no need to clear its header pages first
             part.reset();
             part.close();
 
@@ -210,6 +210,35 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
     @Override
+    public void readPages(long page, byte[][] bufs) {
+        for (byte[] buf : bufs){
+            if (buf.length != PAGE_SIZE){
+                throw new IllegalArgumentException("Read pages expects page-sized buffers.");
+            }
+        }
+        int pageNum = DiskSpaceManager.getPageNum(page);
+        if (DiskSpaceManager.getPartNum(page + bufs.length - 1) != DiskSpaceManager.getPartNum(page)){
+            throw new IllegalArgumentException("Read pages expects pages of a single partition.");
+        }
+        Partition part;
+        managerLock.lock();
+        try{
+            part = getPartitionByPageNum(page);
+        }finally {
+            managerLock.unlock();
+        }
+
+        part.partLock.lock();
+        try{
+            part.readPages(pageNum, bufs);
+        }catch (IOException e){
+            throw new PageException("Read pages failed from page number " + page + ". " + e.getMessage());
+        }
+        finally {
+            part.partLock.unlock();
+        }
+    }
+    @Override
     public void writePage(long page, byte[] buf) {
         if (buf.length != PAGE_SIZE){
             throw new IllegalArgumentException("Write page expects a page-sized buffer.");
@@ -149,6 +149,38 @@ public class Partition implements AutoCloseable {
         fileChannel.read(ByteBuffer.wrap(buf), dataPageByteOffset(pageNum));
     }
 
+    /**
+     * Read consecutive pages from disk. Data pages under the same header page are
+     * contiguous in the file, so each such run is read with a single read call.
+     * @param pageNum: logical page number of the first page within this partition
+     * @param bufs: destination byte arrays, bufs[i] receiving page pageNum + i.
+     * */
+    void readPages(int pageNum, byte[][] bufs) throws IOException {
+        for (int i = 0; i < bufs.length; i++){
+            if (isFreePage(pageNum + i)){
+                throw new PageException("Cannot read a free page");
+            }
+        }
+
+        int i = 0;
+        while (i < bufs.length){
+            int first = pageNum + i;
+            int runLength = Math.min(bufs.length - i, DATA_PAGES_PER_HEADER - first % DATA_PAGES_PER_HEADER);
+            ByteBuffer run = ByteBuffer.allocate(runLength * PAGE_SIZE);
+            long offset = dataPageByteOffset(first);
+            while (run.hasRemaining()){
+                if (fileChannel.read(run, offset + run.position()) < 0){
+                    break;
+                }
+            }
+            run.flip();
+            for (int j = 0; j < runLength; j++){
+                run.get(bufs[i + j], 0, Math.min(PAGE_SIZE, run.remaining()));
+            }
+            i += runLength;
+        }
+    }
+
     /**
      * Write a page from disk.
      * @param pageNum: logical page number within this partition
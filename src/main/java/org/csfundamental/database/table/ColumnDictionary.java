@@ -0,0 +1,166 @@
+package org.csfundamental.database.table;
+
+import org.csfundamental.database.table.databox.DataBox;
+import org.csfundamental.database.table.databox.IntDataBox;
+import org.csfundamental.database.table.databox.StringDataBox;
+import org.csfundamental.database.table.databox.Type;
+import org.csfundamental.database.table.databox.TypeId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encoding of string columns of a table: rows store the int code of
+ * their value, and the dictionary maps codes back to values. Codes of a column are
+ * assigned in insertion order from 0.
+ *
+ * Entries are persisted as records of an entry table in their own page directory,
+ * one (column, code, value) record per distinct value, and are loaded back when the
+ * dictionary is created. Entries are never removed.
+ *
+ * Encoding takes the dictionary lock. Decoding does not: the values of a column are an
+ * append-only array, published through a volatile reference once a new entry is persisted.
+ * */
+public class ColumnDictionary {
+    private final Schema schema;
+    private final Schema encodedSchema;
+    private final Table entries;
+    // width of the value field of the entries: the widest of the encoded columns
+    private final int valueSize;
+    // for each column of the schema, null if the column is not encoded
+    private final List<Map<String, Integer>> codes;
+    private final List<Values> values;
+
+    /**
+     * Values of an encoded column, indexed by code.
+     * */
+    private static class Values {
+        // entries [0, size) are set; a new entry is set before the array is published again
+        private volatile StringDataBox[] array = new StringDataBox[16];
+        // guarded by the dictionary lock
+        private int size;
+    }
+
+    /**
+     * @param pgDir page directory of the entries of the dictionary.
+     * @param schema schema of the table.
+     * @param columnNames string columns of the table to encode.
+     * */
+    public ColumnDictionary(PageDirectory pgDir, Schema schema, List<String> columnNames) {
+        this.schema = schema;
+        this.codes = new ArrayList<>(Collections.nCopies(schema.size(), null));
+        this.values = new ArrayList<>(Collections.nCopies(schema.size(), null));
+        int valueSize = 1;
+        for (String columnName : columnNames) {
+            int column = schema.findField(columnName);
+            Type type = schema.getFieldType(column);
+            if (type.getTypeId() != TypeId.STRING) {
+                throw new IllegalArgumentException("Only string columns can be dictionary encoded: " + columnName);
+            }
+            codes.set(column, new HashMap<>());
+            values.set(column, new Values());
+            valueSize = Math.max(valueSize, type.getSizeInBytes());
+        }
+        this.valueSize = valueSize;
+        Schema entrySchema = new Schema()
+                .add("column", Type.fromInt())
+                .add("code", Type.fromInt())
+                .add("value", Type.fromString(valueSize));
+        this.entries = new Table("dictionary", pgDir, entrySchema, TableFormat.SLOTTED);
+
+        Schema encodedSchema = new Schema();
+        for (int i = 0; i < schema.size(); i++) {
+            encodedSchema.add(schema.getFieldName(i), isEncoded(i) ? Type.fromInt() : schema.getFieldType(i));
+        }
+        this.encodedSchema = encodedSchema;
+
+        List<Record> loaded = new ArrayList<>();
+        entries.iterator().forEachRemaining(loaded::add);
+        loaded.sort((a, b) -> Integer.compare(a.getInt(1), b.getInt(1)));
+        for (Record entry : loaded) {
+            addEntry(entry.getInt(0), entry.getString(2));
+        }
+    }
+
+    /**
+     * @return schema of the rows as stored: encoded columns are ints.
+     * */
+    public Schema getEncodedSchema() {
+        return encodedSchema;
+    }
+
+    public boolean isEncoded(int column) {
+        return codes.get(column) != null;
+    }
+
+    /**
+     * @return code of the value, or -1 if the value is not in the dictionary.
+     * */
+    public synchronized int lookup(int column, String value) {
+        Integer code = codes.get(column).get(value);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * @return code of the value, adding the value to the dictionary if needed.
+     * */
+    public synchronized int encode(int column, String value) {
+        Integer code = codes.get(column).get(value);
+        if (code != null) {
+            return code;
+        }
+        // persist the entry first, so that no code is handed out that is not on disk
+        int newCode = values.get(column).size;
+        entries.addRecord(new Record(new IntDataBox(column), new IntDataBox(newCode), new StringDataBox(value, valueSize)));
+        return addEntry(column, value);
+    }
+
+    /**
+     * Lock-free: codes read from rows were published before the rows were written.
+     * */
+    public StringDataBox decode(int column, int code) {
+        return values.get(column).array[code];
+    }
+
+    private int addEntry(int column, String value) {
+        Values columnValues = values.get(column);
+        int code = columnValues.size;
+        StringDataBox[] array = columnValues.array;
+        if (code == array.length) {
+            array = Arrays.copyOf(array, 2 * code);
+        }
+        array[code] = new StringDataBox(value, schema.getFieldType(column).getSizeInBytes());
+        columnValues.size = code + 1;
+        columnValues.array = array;
+        codes.get(column).put(value, code);
+        return code;
+    }
+
+    /**
+     * @return the record as stored, with the values of encoded columns replaced by their codes.
+     * */
+    Record encode(Record record) {
+        List<DataBox> encoded = new ArrayList<>(record.size());
+        for (int i = 0; i < record.size(); i++) {
+            encoded.add(isEncoded(i) ? new IntDataBox(encode(i, record.getString(i))) : record.getValue(i));
+        }
+        return new Record(encoded);
+    }
+
+    /**
+     * @param columns columns of the table held by the stored record, or null for all of them.
+     * @return the record with the codes of encoded columns replaced by their values.
+     * */
+    Record decode(Record stored, int[] columns) {
+        List<DataBox> decoded = new ArrayList<>(stored.size());
+        for (int i = 0; i < stored.size(); i++) {
+            int column = columns == null ? i : columns[i];
+            decoded.add(isEncoded(column) ? decode(column, stored.getInt(i)) : stored.getValue(i));
+        }
+        return new Record(decoded);
+    }
+}
@@ -0,0 +1,292 @@
+package org.csfundamental.database.table;
+
+import org.csfundamental.database.DatabaseException;
+import org.csfundamental.database.buffer.Page;
+import org.csfundamental.database.common.Bits;
+import org.csfundamental.database.common.Buffer;
+import org.csfundamental.database.common.ByteBuffer;
+import org.csfundamental.database.table.databox.DataBox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Fixed-width records. Layout of a data page:
+ * bitmapSizeInBytes bytes: bitmap of used slots (bit: 0 means free, 1 means occupied)
+ * numRecordsPerPage * Schema.getSizeInBytes() bytes: slots
+ *
+ * Pages holding a single record have no bitmap: such a page only exists while its record does.
+ * */
+class FixedPageLayout implements PageLayout {
+    final Schema schema;
+    final int bitmapSizeInBytes;
+    final int numRecordsPerPage;
+
+    FixedPageLayout(Schema schema, int pageSize) {
+        this.schema = schema;
+        this.bitmapSizeInBytes = computeBitmapSizeInBytes(pageSize, schema);
+        this.numRecordsPerPage = computeNumRecordsPerPage(pageSize, schema);
+    }
+
+    // (x + N * size)
+    private static int computeBitmapSizeInBytes(int pageSize, Schema schema){
+        int recordsPerPage = computeNumRecordsPerPage(pageSize, schema);
+        if (recordsPerPage == 1) return 0;
+        if (recordsPerPage % 8 == 0) return recordsPerPage / 8;
+        return recordsPerPage / 8 + 1;
+    }
+
+    static int computeNumRecordsPerPage(int pageSize, Schema schema) {
+        int schemaSize = schema.getSizeInBytes();
+        if (schemaSize > pageSize) {
+            throw new DatabaseException(String.format(
+                    "Schema of size %d bytes is larger than effective page size",
+                    schemaSize
+            ));
+        }
+        if (2 * schemaSize + 1 > pageSize) {
+            // special case: full page records with no bitmap. Checks if two
+            // records + bitmap is larger than the effective page size
+            return 1;
+        }
+        // +1 for space in bitmap
+        int recordOverheadInBits = 1 + 8 * schema.getSizeInBytes();
+        int pageSizeInBits = pageSize  * 8;
+        return pageSizeInBits / recordOverheadInBits;
+    }
+
+    @Override
+    public int getMaxRecordsPerPage() {
+        return numRecordsPerPage;
+    }
+
+    @Override
+    public short getRequiredSpace(Record record) {
+        return (short)schema.getSizeInBytes();
+    }
+
+    byte[] getBitMap(Page page) {
+        if (bitmapSizeInBytes > 0){
+            byte[] bitMap = new byte[bitmapSizeInBytes];
+            page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE).get(bitMap);
+            return bitMap;
+        }else{
+            // the record of a single record page is always there
+            return new byte[]{(byte)0x80};
+        }
+    }
+
+    void writeBitMap(Page page, byte[] bitmap) {
+        if (bitmapSizeInBytes == 0){
+            return;
+        }
+        page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE).put(bitmap);
+    }
+
+    private int slotOffset(int slot) {
+        return PageDirectory.DATA_HEADER_SIZE + bitmapSizeInBytes + slot * schema.getSizeInBytes();
+    }
+
+    @Override
+    public int insertRecord(Page page, Record record) {
+        if (bitmapSizeInBytes == 0){
+            // single record pages are only handed out empty
+            record.writeTo(page.getBuffer().position(slotOffset(0)), schema);
+            return 0;
+        }
+        byte[] bitMap = getBitMap(page);
+        int slot = nextFreeSlot(bitMap, 0);
+        if (slot == numRecordsPerPage){
+            return -1;
+        }
+        record.writeTo(page.getBuffer().position(slotOffset(slot)), schema);
+        Bits.setBit(bitMap, slot, Bits.Bit.ONE);
+        writeBitMap(page, bitMap);
+        return slot;
+    }
+
+    /**
+     * Writes each run of consecutive free slots with a single write, and the bitmap once.
+     * */
+    @Override
+    public Record fillPage(Page page, Record first, Iterator<Record> rest, List<RecordId> rids) {
+        if (bitmapSizeInBytes == 0){
+            return PageLayout.super.fillPage(page, first, rest, rids);
+        }
+        int sizeInBytes = schema.getSizeInBytes();
+        byte[] bitMap = getBitMap(page);
+        Record record = first;
+        int slot = nextFreeSlot(bitMap, 0);
+        while (slot < numRecordsPerPage && record != null){
+            int runEnd = nextUsedSlot(bitMap, slot + 1);
+            byte[] run = new byte[(runEnd - slot) * sizeInBytes];
+            Buffer runBuf = ByteBuffer.wrap(run);
+            int runStart = slot;
+            while (slot < runEnd && record != null){
+                record.writeTo(runBuf, schema);
+                rids.add(new RecordId(page.getPageNum(), (short)slot));
+                slot++;
+                record = rest.hasNext() ? rest.next() : null;
+            }
+            page.getBuffer().position(slotOffset(runStart)).put(Arrays.copyOf(run, runBuf.position()));
+            Bits.setBits(bitMap, runStart, slot, Bits.Bit.ONE);
+            slot = nextFreeSlot(bitMap, slot);
+        }
+        writeBitMap(page, bitMap);
+        return record;
+    }
+
+    /**
+     * @throws DatabaseException if the slot holds no record.
+     * */
+    void checkSlot(Page page, byte[] bitMap, int slot) {
+        if (slot < 0 || slot >= numRecordsPerPage || Bits.getBit(bitMap, slot) == Bits.Bit.ZERO){
+            throw new DatabaseException(String.format("No record at slot %d of page %d", slot, page.getPageNum()));
+        }
+    }
+
+    @Override
+    public Record getRecord(Page page, int slot) {
+        checkSlot(page, getBitMap(page), slot);
+        byte[] bytes = new byte[schema.getSizeInBytes()];
+        page.getBuffer().position(slotOffset(slot)).get(bytes);
+        return new PackedRecord(schema, bytes, 0);
+    }
+
+    @Override
+    public DataBox readField(Page page, int slot, int column) {
+        checkSlot(page, getBitMap(page), slot);
+        return PageLayout.readField(page, slotOffset(slot) + schema.getFieldOffset(column), schema.getFieldType(column));
+    }
+
+    @Override
+    public boolean updateRecord(Page page, int slot, Record record) {
+        checkSlot(page, getBitMap(page), slot);
+        record.writeTo(page.getBuffer().position(slotOffset(slot)), schema);
+        return true;
+    }
+
+    @Override
+    public int deleteRecords(Page page, int[] slots) {
+        byte[] bitMap = getBitMap(page);
+        for (int slot : slots){
+            checkSlot(page, bitMap, slot);
+            Bits.setBit(bitMap, slot, Bits.Bit.ZERO);
+        }
+        writeBitMap(page, bitMap);
+        return Bits.countBits(bitMap, 0, numRecordsPerPage);
+    }
+
+    @Override
+    public int[] getLiveSlots(Page page) {
+        byte[] bitMap = getBitMap(page);
+        int[] slots = new int[Bits.countBits(bitMap, 0, numRecordsPerPage)];
+        int slot = -1;
+        for (int i = 0; i < slots.length; i++){
+            slot = nextUsedSlot(bitMap, slot + 1);
+            slots[i] = slot;
+        }
+        return slots;
+    }
+
+    @Override
+    public List<Record> getRecords(Page page) {
+        int sizeInBytes = schema.getSizeInBytes();
+        byte[] bytes = new byte[bitmapSizeInBytes + numRecordsPerPage * sizeInBytes];
+        page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE).get(bytes);
+
+        // records share the bytes of the page, and decode their fields on demand
+        List<Record> records = new ArrayList<>();
+        if (bitmapSizeInBytes == 0){
+            records.add(new PackedRecord(schema, bytes, 0));
+            return records;
+        }
+        // the bits past numRecordsPerPage are record data: nextUsedSlot stops before them
+        for (int i = nextUsedSlot(bytes, 0); i < numRecordsPerPage; i = nextUsedSlot(bytes, i + 1)){
+            records.add(new PackedRecord(schema, bytes, bitmapSizeInBytes + i * sizeInBytes));
+        }
+        return records;
+    }
+
+    /**
+     * Reads the page once, and copies each column of the records straight from the bytes
+     * of the page into the column of the batch.
+     * */
+    @Override
+    public int fillBatch(Page page, int fromSlot, RecordBatch batch) {
+        byte[] bytes = new byte[bitmapSizeInBytes + numRecordsPerPage * schema.getSizeInBytes()];
+        page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE).get(bytes);
+        int[] slots = new int[Math.min(batch.getCapacity() - batch.getNumRows(), numRecordsPerPage)];
+        int next = nextBatchSlots(bytes, fromSlot, slots);
+        int count = next < 0 ? countSlots(slots) : slots.length;
+        int[] positions = new int[count];
+        for (int column = 0; column < schema.size(); column++) {
+            for (int k = 0; k < count; k++) {
+                positions[k] = fieldPosition(column, slots[k]);
+            }
+            batch.readColumn(column, bytes, positions, count);
+        }
+        batch.addRows(count);
+        return next;
+    }
+
+    /**
+     * @return position of the field of the record at the slot, in the bytes of a page read
+     * from its bitmap on (see fillBatch).
+     * */
+    int fieldPosition(int column, int slot) {
+        return bitmapSizeInBytes + slot * schema.getSizeInBytes() + schema.getFieldOffset(column);
+    }
+
+    /**
+     * Fill slots with the used slots at or after fromSlot, ending with -1 if there are fewer.
+     * @return next used slot once slots is full, or -1.
+     * */
+    private int nextBatchSlots(byte[] bitMap, int fromSlot, int[] slots) {
+        // the single record of a page without bitmap is always there
+        int slot = bitmapSizeInBytes == 0 ? (fromSlot == 0 ? 0 : numRecordsPerPage) : nextUsedSlot(bitMap, fromSlot);
+        for (int k = 0; k < slots.length; k++) {
+            if (slot == numRecordsPerPage) {
+                slots[k] = -1;
+                return -1;
+            }
+            slots[k] = slot;
+            slot = bitmapSizeInBytes == 0 ? numRecordsPerPage : nextUsedSlot(bitMap, slot + 1);
+        }
+        return slot == numRecordsPerPage ? -1 : slot;
+    }
+
+    private static int countSlots(int[] slots) {
+        int count = 0;
+        while (count < slots.length && slots[count] >= 0) {
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public short getFreeSpace(Page page) {
+        if (bitmapSizeInBytes == 0){
+            return 0;
+        }
+        return (short)((numRecordsPerPage - Bits.countBits(getBitMap(page), 0, numRecordsPerPage)) * schema.getSizeInBytes());
+    }
+
+    /**
+     * @return first free slot at or after index, or numRecordsPerPage if there is none.
+     * */
+    int nextFreeSlot(byte[] bitMap, int index){
+        int slot = Bits.nextClearBit(bitMap, index, numRecordsPerPage);
+        return slot < 0 ? numRecordsPerPage : slot;
+    }
+
+    /**
+     * @return first used slot at or after index, or numRecordsPerPage if there is none.
+     * */
+    int nextUsedSlot(byte[] bitMap, int index){
+        int slot = Bits.nextSetBit(bitMap, index, numRecordsPerPage);
+        return slot < 0 ? numRecordsPerPage : slot;
+    }
+}
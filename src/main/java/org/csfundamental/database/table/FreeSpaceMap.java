@@ -0,0 +1,200 @@
+package org.csfundamental.database.table;
+
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.LongPredicate;
+
+/**
+ * In-memory index of the free space of the data pages of a page directory, mirroring the
+ * data page entries of its header pages.
+ *
+ * Data pages are bucketed by their exact free space in bytes, and a bitmap marks the
+ * non-empty buckets, so that finding a page with at least N free bytes is a scan for the
+ * next set bit from N: a bounded number of word operations, independent of the number of
+ * data pages. Among pages of the same free space the oldest one is returned.
+ *
+ * Unused data page entries of header pages are tracked as slot ids
+ * (headerIndex * HEADER_ENTRY_COUNT + entryIndex), lowest first.
+ *
+ * Not thread-safe: guarded by the page directory.
+ * */
+class FreeSpaceMap {
+    private final int entriesPerHeader;
+    // pages keyed by free space in bytes
+    private final LinkedHashSet<Long>[] buckets;
+    // bit i is set iff buckets[i] is non-empty
+    private final BitSet nonEmptyBuckets;
+    private final Map<Long, Entry> entries;
+    private final TreeSet<Integer> unusedSlots;
+    private int numHeaders;
+    // page numbers ordered by header page and entry, null until computed after a page is added or removed
+    private long[] pageNums;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    FreeSpaceMap(int maxFreeSpace, int entriesPerHeader) {
+        this.entriesPerHeader = entriesPerHeader;
+        this.buckets = new LinkedHashSet[maxFreeSpace + 1];
+        this.nonEmptyBuckets = new BitSet(maxFreeSpace + 1);
+        this.entries = new HashMap<>();
+        this.unusedSlots = new TreeSet<>();
+        this.numHeaders = 0;
+    }
+
+    /**
+     * Location of the data page entry of a data page, and its free space.
+     * */
+    static class Entry {
+        final long pageNum;
+        final int headerIndex;
+        final short entryIndex;
+        private short freeSpace;
+
+        private Entry(long pageNum, int headerIndex, short entryIndex, short freeSpace) {
+            this.pageNum = pageNum;
+            this.headerIndex = headerIndex;
+            this.entryIndex = entryIndex;
+            this.freeSpace = freeSpace;
+        }
+
+        short getFreeSpace() {
+            return freeSpace;
+        }
+    }
+
+    /**
+     * Register a header page, with all of its entries unused.
+     * Returns the index of the new header page.
+     * */
+    int addHeader() {
+        int headerIndex = numHeaders++;
+        for (int i = 0; i < entriesPerHeader; i++) {
+            unusedSlots.add(headerIndex * entriesPerHeader + i);
+        }
+        return headerIndex;
+    }
+
+    int getNumHeaders() {
+        return numHeaders;
+    }
+
+    /**
+     * @return the data page with at least requiredSpace free bytes and the least free
+     * space, or null if there is none.
+     * */
+    Entry findPage(short requiredSpace) {
+        int bucket = nonEmptyBuckets.nextSetBit(requiredSpace);
+        if (bucket < 0) {
+            return null;
+        }
+        return entries.get(buckets[bucket].iterator().next());
+    }
+
+    /**
+     * Same as findPage, among the pages not skipped. Each skipped page is visited once,
+     * so the search stays short as long as few pages are skipped.
+     * */
+    Entry findPage(short requiredSpace, LongPredicate skip) {
+        for (int bucket = nonEmptyBuckets.nextSetBit(requiredSpace); bucket >= 0;
+             bucket = nonEmptyBuckets.nextSetBit(bucket + 1)) {
+            for (long pageNum : buckets[bucket]) {
+                if (!skip.test(pageNum)) {
+                    return entries.get(pageNum);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return slot id of the first unused data page entry, or -1 if every entry is used.
+     * */
+    int firstUnusedSlot() {
+        return unusedSlots.isEmpty() ? -1 : unusedSlots.first();
+    }
+
+    int headerIndexOf(int slot) {
+        return slot / entriesPerHeader;
+    }
+
+    short entryIndexOf(int slot) {
+        return (short) (slot % entriesPerHeader);
+    }
+
+    /**
+     * Record a data page entry that has been put in use.
+     * */
+    void addPage(long pageNum, int headerIndex, short entryIndex, short freeSpace) {
+        unusedSlots.remove(headerIndex * entriesPerHeader + entryIndex);
+        Entry entry = new Entry(pageNum, headerIndex, entryIndex, freeSpace);
+        entries.put(pageNum, entry);
+        addToBucket(entry);
+        pageNums = null;
+    }
+
+    void updatePage(long pageNum, short freeSpace) {
+        Entry entry = entries.get(pageNum);
+        if (entry == null) {
+            return;
+        }
+        removeFromBucket(entry);
+        entry.freeSpace = freeSpace;
+        addToBucket(entry);
+    }
+
+    /**
+     * Record a data page entry that has been released, with its data page freed.
+     * */
+    void removePage(long pageNum) {
+        Entry entry = entries.remove(pageNum);
+        if (entry == null) {
+            return;
+        }
+        removeFromBucket(entry);
+        unusedSlots.add(entry.headerIndex * entriesPerHeader + entry.entryIndex);
+        pageNums = null;
+    }
+
+    Entry getEntry(long pageNum) {
+        return entries.get(pageNum);
+    }
+
+    int getNumPages() {
+        return entries.size();
+    }
+
+    /**
+     * @return page numbers of the data pages, ordered by header page and entry. The order
+     * is sorted once after pages are added or removed, and copied out on later calls.
+     * */
+    long[] getPageNums() {
+        if (pageNums == null) {
+            pageNums = entries.values().stream()
+                    .sorted(Comparator.comparingInt((Entry e) -> e.headerIndex).thenComparingInt(e -> e.entryIndex))
+                    .mapToLong(e -> e.pageNum)
+                    .toArray();
+        }
+        return pageNums.clone();
+    }
+
+    private void addToBucket(Entry entry) {
+        int bucket = entry.freeSpace;
+        if (buckets[bucket] == null) {
+            buckets[bucket] = new LinkedHashSet<>();
+        }
+        buckets[bucket].add(entry.pageNum);
+        nonEmptyBuckets.set(bucket);
+    }
+
+    private void removeFromBucket(Entry entry) {
+        int bucket = entry.freeSpace;
+        LinkedHashSet<Long> pages = buckets[bucket];
+        pages.remove(entry.pageNum);
+        if (pages.isEmpty()) {
+            nonEmptyBuckets.clear(bucket);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package org.csfundamental.database.table;
+
+import org.csfundamental.database.DatabaseException;
+import org.csfundamental.database.buffer.BufferManager;
+import org.csfundamental.database.buffer.Page;
+import org.csfundamental.database.common.Buffer;
+import org.csfundamental.database.storage.DiskSpaceManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Out-of-line storage of values too large for a row, e.g. strings or byte arrays of more
+ * than 256 bytes. A value is stored in a chain of overflow pages allocated in a partition
+ * through the buffer manager, and a row refers to it by a pointer stored in a LONG field:
+ * the page number of the first page of the chain. Scans that do not read the pointer never
+ * touch the overflow pages. See Table.enableOverflow for tables that own the chains of
+ * their rows.
+ *
+ * Layout of an overflow page:
+ * 8 bytes: page number of the next page of the chain, or DiskSpaceManager.INVALID_PAGE_NUM
+ *          for the last page
+ * 4 bytes: number of bytes of the value in this page
+ * rest of the page: bytes of the value
+ *
+ * Values are written and read as streams, one page at a time, so that a value never has
+ * to be held in memory as a whole.
+ * */
+public class OverflowStore {
+    static final int HEADER_SIZE = Long.BYTES + Integer.BYTES;
+    static final int DATA_SIZE = BufferManager.EFFECTIVE_PAGE_SIZE - HEADER_SIZE;
+
+    private final BufferManager bufferManager;
+    private final int partNum;
+
+    /**
+     * @param partNum partition to allocate overflow pages in.
+     * */
+    public OverflowStore(BufferManager bufferManager, int partNum) {
+        this.bufferManager = bufferManager;
+        this.partNum = partNum;
+    }
+
+    /**
+     * @return stream writing a new value. The pointer to the value is available right
+     * away, the value is complete once the stream is closed.
+     * */
+    public Writer newValue() {
+        return new Writer();
+    }
+
+    /**
+     * @return pointer to a new value holding bytes.
+     * */
+    public long write(byte[] bytes) {
+        try (Writer writer = newValue()) {
+            writer.write(bytes, 0, bytes.length);
+            return writer.getPointer();
+        }
+    }
+
+    public long write(String value) {
+        return write(value.getBytes());
+    }
+
+    /**
+     * @return stream reading the value from its first byte.
+     * */
+    public InputStream open(long pointer) {
+        checkPointer(pointer);
+        return new Reader(pointer);
+    }
+
+    public byte[] read(long pointer) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = open(pointer)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public String readString(long pointer) {
+        return new String(read(pointer));
+    }
+
+    /**
+     * @return length in bytes of the value, read from the page headers only.
+     * */
+    public long length(long pointer) {
+        checkPointer(pointer);
+        long length = 0;
+        long pageNum = pointer;
+        while (pageNum != DiskSpaceManager.INVALID_PAGE_NUM) {
+            Page page = bufferManager.fetchPage(pageNum);
+            try {
+                Buffer buf = page.getBuffer().position(0);
+                pageNum = buf.getLong();
+                length += buf.getInt();
+            } finally {
+                page.unpin();
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Frees the pages of the value. The pointer cannot be used afterwards.
+     * */
+    public void free(long pointer) {
+        checkPointer(pointer);
+        long pageNum = pointer;
+        while (pageNum != DiskSpaceManager.INVALID_PAGE_NUM) {
+            Page page = bufferManager.fetchPage(pageNum);
+            try {
+                pageNum = page.getBuffer().position(0).getLong();
+                bufferManager.freePage(page);
+            } finally {
+                page.unpin();
+            }
+        }
+    }
+
+    private void checkPointer(long pointer) {
+        if (pointer == DiskSpaceManager.INVALID_PAGE_NUM) {
+            throw new DatabaseException("Null overflow pointer");
+        }
+    }
+
+    /**
+     * Fills the data of one page at a time, and writes the page once it is full and the
+     * next page of the chain has been allocated, or once the stream is closed.
+     *
+     * If a write fails, the current page is released and the stream is closed: the value
+     * is incomplete and its pointer must not be used.
+     * */
+    public class Writer extends OutputStream {
+        private final long pointer;
+        private final byte[] data = new byte[DATA_SIZE];
+        private Page page;
+        private int length;
+
+        private Writer() {
+            this.page = bufferManager.fetchNewPage(partNum);
+            this.pointer = page.getPageNum();
+        }
+
+        /**
+         * @return pointer to the value, to be stored in its row.
+         * */
+        public long getPointer() {
+            return pointer;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (page == null) {
+                throw new IllegalStateException("Writing to a closed overflow value");
+            }
+            try {
+                while (len > 0) {
+                    if (length == DATA_SIZE) {
+                        Page next = bufferManager.fetchNewPage(partNum);
+                        Page full = page;
+                        page = next;
+                        flushPage(full, next.getPageNum());
+                    }
+                    int n = Math.min(len, DATA_SIZE - length);
+                    System.arraycopy(b, off, data, length, n);
+                    length += n;
+                    off += n;
+                    len -= n;
+                }
+            } catch (RuntimeException e) {
+                page.unpin();
+                page = null;
+                throw e;
+            }
+        }
+
+        /**
+         * Writes the data to the page, and unpins it.
+         * */
+        private void flushPage(Page page, long next) {
+            try {
+                Buffer buf = page.getBuffer().position(0);
+                buf.putLong(next).putInt(length);
+                if (length == DATA_SIZE) {
+                    buf.put(data);
+                } else if (length > 0) {
+                    byte[] bytes = new byte[length];
+                    System.arraycopy(data, 0, bytes, 0, length);
+                    buf.put(bytes);
+                }
+            } finally {
+                page.unpin();
+            }
+            length = 0;
+        }
+
+        @Override
+        public void close() {
+            if (page != null) {
+                Page last = page;
+                page = null;
+                flushPage(last, DiskSpaceManager.INVALID_PAGE_NUM);
+            }
+        }
+    }
+
+    /**
+     * Reads the data of one page at a time, following the chain.
+     * */
+    private class Reader extends InputStream {
+        private long next;
+        private byte[] data = new byte[0];
+        private int position;
+
+        private Reader(long pointer) {
+            this.next = pointer;
+        }
+
+        /**
+         * @return false at the end of the value.
+         * */
+        private boolean fill() {
+            while (position == data.length) {
+                if (next == DiskSpaceManager.INVALID_PAGE_NUM) {
+                    return false;
+                }
+                Page page = bufferManager.fetchPage(next);
+                try {
+                    Buffer buf = page.getBuffer().position(0);
+                    next = buf.getLong();
+                    data = new byte[buf.getInt()];
+                    buf.get(data);
+                } finally {
+                    page.unpin();
+                }
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() {
+            return fill() ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, data.length - position);
+            System.arraycopy(data, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return data.length - position;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.csfundamental.database.table;
+
+import org.csfundamental.database.common.Buffer;
+import org.csfundamental.database.table.databox.BoolDataBox;
+import org.csfundamental.database.table.databox.ByteArrayDataBox;
+import org.csfundamental.database.table.databox.DataBox;
+import org.csfundamental.database.table.databox.FloatDataBox;
+import org.csfundamental.database.table.databox.IntDataBox;
+import org.csfundamental.database.table.databox.LongDataBox;
+import org.csfundamental.database.table.databox.StringDataBox;
+import org.csfundamental.database.table.databox.Type;
+import org.csfundamental.database.table.databox.TypeId;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Record backed by its fixed-width encoding (see Record.toBytes), at some offset of a
+ * byte array that may be shared with other records, e.g. the bytes of a whole page.
+ *
+ * Typed getters decode the field in place. A DataBox is only created when getValue is
+ * called, and kept for later calls. The bytes must not be modified while the record is in use.
+ *
+ * A record may be shared by threads, e.g. through the record cache of a table: decoded values
+ * are kept in a fully built array published through a volatile reference.
+ * */
+public class PackedRecord extends Record {
+    private final Schema schema;
+    private final byte[] data;
+    private final int start;
+    // decoded values, by index; replaced by a copy when a value is added
+    private volatile DataBox[] values;
+
+    PackedRecord(Schema schema, byte[] data, int start) {
+        super((List<DataBox>) null);
+        this.schema = schema;
+        this.data = data;
+        this.start = start;
+    }
+
+    public PackedRecord(Schema schema, byte[] data) {
+        this(schema, data, 0);
+    }
+
+    @Override
+    public int size() {
+        return schema.size();
+    }
+
+    @Override
+    public DataBox getValue(int index) {
+        DataBox[] decoded = values;
+        if (decoded != null && decoded[index] != null) {
+            return decoded[index];
+        }
+        DataBox value = decode(index);
+        // a concurrent decode of another value may be lost, and is then decoded again
+        DataBox[] updated = decoded == null ? new DataBox[schema.size()] : decoded.clone();
+        updated[index] = value;
+        values = updated;
+        return value;
+    }
+
+    private DataBox decode(int index) {
+        Type type = schema.getFieldType(index);
+        switch (type.getTypeId()) {
+            case BOOL: return new BoolDataBox(getBool(index));
+            case INT: return new IntDataBox(getInt(index));
+            case LONG: return new LongDataBox(getLong(index));
+            case FLOAT: return new FloatDataBox(getFloat(index));
+            case STRING: return new StringDataBox(getString(index), type.getSizeInBytes());
+            case BYTE_ARRAY: return new ByteArrayDataBox(getByteArray(index), type.getSizeInBytes());
+            default: throw new IllegalArgumentException("Unhandled TypeId " + type.getTypeId());
+        }
+    }
+
+    private void checkType(int index, TypeId typeId) {
+        if (schema.getFieldType(index).getTypeId() != typeId) {
+            throw new RuntimeException(String.format("field %d is not of type %s", index, typeId));
+        }
+    }
+
+    @Override
+    public boolean getBool(int index) {
+        checkType(index, TypeId.BOOL);
+        return data[start + schema.getFieldOffset(index)] == 1;
+    }
+
+    @Override
+    public int getInt(int index) {
+        checkType(index, TypeId.INT);
+        return readInt(data, start + schema.getFieldOffset(index));
+    }
+
+    @Override
+    public long getLong(int index) {
+        checkType(index, TypeId.LONG);
+        return readLong(data, start + schema.getFieldOffset(index));
+    }
+
+    @Override
+    public float getFloat(int index) {
+        checkType(index, TypeId.FLOAT);
+        return Float.intBitsToFloat(readInt(data, start + schema.getFieldOffset(index)));
+    }
+
+    @Override
+    public String getString(int index) {
+        checkType(index, TypeId.STRING);
+        return readString(data, start + schema.getFieldOffset(index), schema.getFieldType(index).getSizeInBytes());
+    }
+
+    @Override
+    public byte[] getByteArray(int index) {
+        checkType(index, TypeId.BYTE_ARRAY);
+        int pos = start + schema.getFieldOffset(index);
+        return Arrays.copyOfRange(data, pos, pos + schema.getFieldType(index).getSizeInBytes());
+    }
+
+    @Override
+    public byte[] toBytes(Schema schema) {
+        return Arrays.copyOfRange(data, start, start + this.schema.getSizeInBytes());
+    }
+
+    /**
+     * Writes the bytes of the record as is. A record backed by a whole array is written
+     * without copying; a record at some offset of a shared array, e.g. the bytes of a page,
+     * is copied out first, as buffers only write whole arrays.
+     * */
+    @Override
+    public void writeTo(Buffer dst, Schema schema) {
+        int size = this.schema.getSizeInBytes();
+        if (start == 0 && data.length == size) {
+            dst.put(data);
+        } else {
+            dst.put(toBytes(schema));
+        }
+    }
+
+    // big endian, as java.nio.ByteBuffer
+    static int readInt(byte[] data, int pos) {
+        return (data[pos] << 24) | ((data[pos + 1] & 0xFF) << 16) | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+    }
+
+    static long readLong(byte[] data, int pos) {
+        return ((long) readInt(data, pos) << 32) | (readInt(data, pos + Integer.BYTES) & 0xFFFFFFFFL);
+    }
+
+    static String readString(byte[] data, int pos, int size) {
+        // trim off the padding null bytes, as StringDataBox does
+        int end = pos + size;
+        while (end > pos && data[end - 1] == 0) {
+            end--;
+        }
+        return new String(data, pos, end - pos);
+    }
+}
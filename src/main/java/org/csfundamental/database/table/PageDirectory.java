@@ -12,7 +12,13 @@ import org.csfundamental.database.common.iterator.IndexBacktrackingIterator;
 import org.csfundamental.database.storage.DiskSpaceManager;
 import org.csfundamental.database.storage.PageException;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * An implementation of a heap file, using a page directory.
@@ -33,7 +39,18 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             DATA_HEADER_SIZE;
 
     private BufferManager bufferManager;
-    private HeaderPage firstHeader;
+    // header pages in chain order, indexed by header offset
+    private final List<HeaderPage> headers;
+    // free space of the data pages, loaded from header pages on first use
+    private FreeSpaceMap freeSpaceMap;
+    // per thread: last data page handed out by fetchPageWithSpace, tried first by the next call
+    private final ThreadLocal<Long> insertionHint = new ThreadLocal<>();
+    // thread of the insertion hint of each hinted data page, so that other threads search elsewhere first
+    private final Map<Long, Thread> insertionPages = new HashMap<>();
+    // number of times each data page was handed out by fetchPageWithSpace and not unpinned yet
+    private final Map<Long, Integer> reservedPages = new HashMap<>();
+    // guards the header pages, the free space map, the insertion pages and the reserved pages
+    private final ReentrantLock directoryLock = new ReentrantLock();
 
     /**
      * Single partition that saves all the header paged
@@ -54,7 +71,14 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     public PageDirectory(BufferManager bufferManager, int partNum, long firstHeaderPageNum) {
         this.bufferManager = bufferManager;
         this.partNum = partNum;
-        this.firstHeader = new HeaderPage(firstHeaderPageNum, 0, true);
+        this.headers = new ArrayList<>();
+        // walk the chain of header pages iteratively, loading each header page once
+        long headerPageNum = firstHeaderPageNum;
+        while (headerPageNum != DiskSpaceManager.INVALID_PAGE_NUM){
+            HeaderPage header = new HeaderPage(headerPageNum, headers.size(), headers.isEmpty());
+            headers.add(header);
+            headerPageNum = header.nextPageNum;
+        }
     }
 
     public short getEffectivePageSize() {
@@ -73,7 +97,13 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     /**
      * Request a data page that has more space than required.
      * This page could either be one that has already been allocated and has enough free space,
-     * or it could be a new page created within this page directory
+     * or it could be a new page created within this page directory.
+     * The page last returned to the calling thread is used again as long as it has
+     * enough space, so that appends fill one page after the other without searching.
+     * Otherwise pages that other threads are inserting into are only used if no other
+     * page has enough space, and a new page is only allocated if no page has.
+     * The page is not freed until the returned page is unpinned, even if it is left empty
+     * by deletes in the meantime.
      *
      * @param requiredSpace space required in bytes.
      * **/
@@ -85,22 +115,96 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             throw new IllegalArgumentException("requesting page with more space than the size of the page");
         }
 
-        Page page = this.firstHeader.fetchPageWithSpace(requiredSpace);
+        Page page = null;
+        long pageNum;
+        directoryLock.lock();
+        try{
+            FreeSpaceMap fsm = getFreeSpaceMap();
+            Long hint = insertionHint.get();
+            FreeSpaceMap.Entry entry = hint == null ? null : fsm.getEntry(hint);
+            if (entry == null || entry.getFreeSpace() < requiredSpace){
+                // prefer the pages other threads are not inserting into
+                entry = fsm.findPage(requiredSpace, this::isInsertionPageOfOtherThread);
+                if (entry == null){
+                    // share a page of another thread, which may well be idle, rather than allocating
+                    entry = fsm.findPage(requiredSpace);
+                }
+            }
+            if (entry != null){
+                // use this page: pre-deduct the free space
+                short newFreeSpace = (short)(entry.getFreeSpace() - requiredSpace);
+                getHeader(entry.headerIndex).writeEntry(entry.entryIndex, new DataPageEntry(entry.pageNum, newFreeSpace));
+                fsm.updatePage(entry.pageNum, newFreeSpace);
+                pageNum = entry.pageNum;
+            }else{
+                int slot = fsm.firstUnusedSlot();
+                if (slot == -1){
+                    // every header page is full, make a new one
+                    addNewHeaderPage();
+                    fsm.addHeader();
+                    slot = fsm.firstUnusedSlot();
+                }
+                int headerIndex = fsm.headerIndexOf(slot);
+                short entryIndex = fsm.entryIndexOf(slot);
+                page = getHeader(headerIndex).allocDataPage(entryIndex, requiredSpace);
+                pageNum = page.getPageNum();
+                fsm.addPage(pageNum, headerIndex, entryIndex, (short)(EFFECTIVE_PAGE_SIZE - requiredSpace));
+            }
+            setInsertionPage(hint, pageNum);
+            reservedPages.merge(pageNum, 1, Integer::sum);
+        }finally {
+            directoryLock.unlock();
+        }
+        try{
+            if (page == null){
+                // the space is reserved: fetch the page without holding the directory lock
+                page = bufferManager.fetchPage(pageNum);
+            }
 //        LockContext pageContext = lockContext.childContext(page.getPageNum());
-        // TODO(proj4_part2): Update the following line
+            // TODO(proj4_part2): Update the following line
 //        LockUtil.ensureSufficientLockHeld(pageContext, LockType.NL);
 
-        return new DataPage(pageDirectoryId, page);
+            return new ReservedDataPage(pageDirectoryId, page);
+        }catch (RuntimeException e){
+            releasePage(pageNum);
+            throw e;
+        }
+    }
+
+    private void releasePage(long pageNum){
+        directoryLock.lock();
+        try{
+            reservedPages.computeIfPresent(pageNum, (p, count) -> count == 1 ? null : count - 1);
+        }finally {
+            directoryLock.unlock();
+        }
+    }
+
+    private boolean isInsertionPageOfOtherThread(long pageNum){
+        Thread thread = insertionPages.get(pageNum);
+        return thread != null && thread != Thread.currentThread() && thread.isAlive();
+    }
+
+    private void setInsertionPage(Long previous, long pageNum){
+        if (previous != null && previous != pageNum && insertionPages.get(previous) == Thread.currentThread()){
+            insertionPages.remove(previous);
+        }
+        insertionPages.put(pageNum, Thread.currentThread());
+        insertionHint.set(pageNum);
     }
 
     /**
      * Update the free space of header page managing the data page.
+     * A free space of 0 marks the page as full, and a free space of the effective
+     * page size frees the page. A page handed out by fetchPageWithSpace and still
+     * pinned, or kept by another thread for its next insertions, is kept empty instead:
+     * its inserter is about to write to it.
      *
      * @param page data page to update the space
      * @param  newFreeSpace the new space size in byte.
      * **/
     public void updateFreeSpace(Page page, short newFreeSpace) {
-        if (newFreeSpace <= 0 || newFreeSpace > EFFECTIVE_PAGE_SIZE) {
+        if (newFreeSpace < 0 || newFreeSpace > EFFECTIVE_PAGE_SIZE) {
             throw new IllegalArgumentException("bad size for data page free space");
         }
         int headerIndex;
@@ -116,12 +220,57 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             page.unpin();
         }
 
-        HeaderPage header = firstHeader;
-        for(int i = 0; i < headerIndex; i++){
-            header = header.next;
+        directoryLock.lock();
+        try{
+            long pageNum = page.getPageNum();
+            boolean free = newFreeSpace == EFFECTIVE_PAGE_SIZE && !reservedPages.containsKey(pageNum)
+                    && !isInsertionPageOfOtherThread(pageNum);
+            getHeader(headerIndex).updateSpace(page, entryIndex, newFreeSpace, free);
+            if (free){
+                insertionPages.remove(pageNum);
+            }
+            if (freeSpaceMap != null){
+                if (!free){
+                    freeSpaceMap.updatePage(page.getPageNum(), newFreeSpace);
+                }else{
+                    freeSpaceMap.removePage(page.getPageNum());
+                }
+            }
+        }finally {
+            directoryLock.unlock();
+        }
+    }
+
+    private HeaderPage getHeader(int headerIndex){
+        return headers.get(headerIndex);
+    }
+
+    /**
+     * Append a new header page to the chain of header pages.
+     * */
+    private void addNewHeaderPage(){
+        HeaderPage last = headers.get(headers.size() - 1);
+        Page page = bufferManager.fetchNewPage(partNum); //page has pinned
+        try{
+            headers.add(new HeaderPage(page.getPageNum(), headers.size(), false));
+            last.setNextPageNum(page.getPageNum());
+        }finally {
+            page.unpin();
         }
+    }
 
-        header.updateSpace(page, entryIndex, newFreeSpace);
+    /**
+     * Load the free space map from the header pages, if not loaded yet.
+     * */
+    private FreeSpaceMap getFreeSpaceMap(){
+        if (freeSpaceMap == null){
+            FreeSpaceMap fsm = new FreeSpaceMap(EFFECTIVE_PAGE_SIZE, HEADER_ENTRY_COUNT);
+            for (HeaderPage header : headers){
+                header.loadEntries(fsm, fsm.addHeader());
+            }
+            freeSpaceMap = fsm;
+        }
+        return freeSpaceMap;
     }
 
     @Override
@@ -129,19 +278,77 @@ public class PageDirectory implements BacktrackingIterable<Page> {
         return new ConcatBacktrackingIterator<>(new HeaderPageIterator());
     }
 
+    /**
+     * Snapshot of the data pages, in the order of iterator(), taken without pinning
+     * them. Ranges of the snapshot can be scanned independently, e.g. by parallel workers.
+     * */
+    public long[] getDataPageNums(){
+        directoryLock.lock();
+        try{
+            return getFreeSpaceMap().getPageNums();
+        }finally {
+            directoryLock.unlock();
+        }
+    }
+
+    /**
+     * Frees every page of the page directory at once, by truncating its partition, so the
+     * page directory must own its partition. The first header page is allocated again with
+     * the same page number, so the page directory can still be loaded from it.
+     * */
+    public void truncate(){
+        directoryLock.lock();
+        try{
+            long firstHeaderPageNum = headers.get(0).page.getPageNum();
+            bufferManager.truncatePart(partNum);
+            bufferManager.fetchNewPageAt(firstHeaderPageNum).unpin();
+            headers.clear();
+            freeSpaceMap = null;
+            insertionPages.clear();
+            reservedPages.clear();
+            headers.add(new HeaderPage(firstHeaderPageNum, 0, true));
+        }finally {
+            directoryLock.unlock();
+        }
+    }
+
+    /**
+     * Frees the partition of the page directory, which it must own, with all of its pages.
+     * The page directory cannot be used afterwards.
+     * */
+    public void drop(){
+        directoryLock.lock();
+        try{
+            headers.clear();
+            freeSpaceMap = null;
+            insertionPages.clear();
+            reservedPages.clear();
+            bufferManager.freePart(partNum);
+        }finally {
+            directoryLock.unlock();
+        }
+    }
+
     public int getNumDataPages(){
-        int numDataPages = 0;
-        HeaderPage headerPage = firstHeader;
-        while(headerPage != null){
-            numDataPages += headerPage.numDataPages;
-            headerPage = headerPage.next;
+        directoryLock.lock();
+        try{
+            int numDataPages = 0;
+            for (HeaderPage headerPage : headers){
+                numDataPages += headerPage.numDataPages;
+            }
+            return numDataPages;
+        }finally {
+            directoryLock.unlock();
         }
-        return numDataPages;
     }
     public int getPartNum() {
         return partNum;
     }
 
+    BufferManager getBufferManager() {
+        return bufferManager;
+    }
+
     /**
      * Data pages contain a small header containing:
      * - 4-byte page directory id
@@ -168,6 +375,33 @@ public class PageDirectory implements BacktrackingIterable<Page> {
         }
     }
 
+    /**
+     * Data page handed out by fetchPageWithSpace. The page stays reserved until the pin it
+     * was handed out with is released, so that it is not freed under its inserter.
+     * */
+    private class ReservedDataPage extends DataPage {
+        // pins taken on this page since it was handed out
+        private int numPins = 0;
+
+        public ReservedDataPage(int pageDirectoryId, Page page){
+            super(pageDirectoryId, page);
+        }
+
+        @Override
+        public void pin() {
+            super.pin();
+            numPins++;
+        }
+
+        @Override
+        public void unpin() {
+            super.unpin();
+            if (numPins-- == 0){
+                releasePage(getPageNum());
+            }
+        }
+    }
+
     private static class DataPageEntry {
         public static final int SIZE = 10;
         long pagNum; // 8 bytes
@@ -214,13 +448,14 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     private class HeaderPage implements BacktrackingIterable<Page> {
         private static final byte HEADER_ALLOCATED = (byte)1;
         private static final int NEXT_HEADER_POSITION = 5;
-        private HeaderPage next;
+        private long nextPageNum;
         private Page page;
         private short numDataPages;
         private int headerOffset;
 
         /**
          * Constructor: load a header page by its virtual page number from disk.
+         * Only this header page is loaded: the next one is identified by nextPageNum.
          * @param pageNum virtual page number of header page of this page directory.
          * @param headerOffset the page offset of this header page from the first header page
          *                     for this page directory.
@@ -230,21 +465,24 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             // fetch header page by page number. return page are pinned.
             this.page = bufferManager.fetchPage(pageNum);
             this.numDataPages = 0;
-            long nextPageNum;
             try {
                 Buffer pageBuffer = page.getBuffer();
                 if (pageBuffer.get() == HEADER_ALLOCATED){
-                    //load allocated header page
-                    int pageDirectoryId = pageBuffer.getInt();
+                    //load allocated header page with a single read
+                    byte[] buf = new byte[HEADER_HEADER_SIZE + HEADER_ENTRY_COUNT * DataPageEntry.SIZE];
+                    pageBuffer.position(0).get(buf);
+                    Buffer headerBuf = ByteBuffer.wrap(buf);
+                    headerBuf.position(1);
+                    int pageDirectoryId = headerBuf.getInt();
                     if (firstHeader){
                         PageDirectory.this.pageDirectoryId = pageDirectoryId;
                     }else if (PageDirectory.this.pageDirectoryId != pageDirectoryId){
                         throw new PageException("header page does not belongs to this page directory");
                     }
 
-                    nextPageNum = pageBuffer.getLong();
+                    nextPageNum = headerBuf.getLong();
                     for (int i = 0; i < HEADER_ENTRY_COUNT; i++){
-                        DataPageEntry dataPageEntry = DataPageEntry.fromBytes(pageBuffer);
+                        DataPageEntry dataPageEntry = DataPageEntry.fromBytes(headerBuf);
                         if (dataPageEntry.isValid()){
                             numDataPages++;
                         }
@@ -272,94 +510,93 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                 this.page.unpin();
             }
             this.headerOffset = headerOffset;
-            if (nextPageNum != DiskSpaceManager.INVALID_PAGE_NUM){
-                this.next = new HeaderPage(nextPageNum, headerOffset + 1, false);
-            }else {
-                this.next = null;
+        }
+
+        /**
+         * Link this header page to the next header page.
+         * */
+        private void setNextPageNum(long nextPageNum){
+            this.page.pin();
+            try{
+                this.page.getBuffer().position(NEXT_HEADER_POSITION).putLong(nextPageNum);
+                this.nextPageNum = nextPageNum;
+            }finally {
+                this.page.unpin();
             }
         }
 
         /**
-         * Load a data page with the free space no less than required space.
-         * For all the data pages managed by the header page, find the target page following
-         * the steps below:
-         * 1. if there is an allocated page that has enough space, then return that page.
-         * 2. else return the first free page if any.
-         * 3. If no free data page included in this header, check data pages managed by the next header page.
+         * Register the valid data page entries of this header page in the free space map.
+         * The header page is read with a single read.
          * **/
-        private Page fetchPageWithSpace(short requiredSpace){
+        private void loadEntries(FreeSpaceMap fsm, int headerIndex){
+            byte[] buf = new byte[HEADER_HEADER_SIZE + HEADER_ENTRY_COUNT * DataPageEntry.SIZE];
             this.page.pin();
             try{
-                // buffer associated with the header page
-                Buffer headerPageBuffer = this.page.getBuffer();
-                headerPageBuffer.position(HEADER_HEADER_SIZE);
-
-                short unusedSlot = -1;
-                for(int i = 0; i < HEADER_ENTRY_COUNT; i++){
-                    DataPageEntry dataPageEntry = DataPageEntry.fromBytes(headerPageBuffer);
-                    if (!dataPageEntry.isValid()){
-                        if (unusedSlot == -1){
-                            unusedSlot = (short)i;
-                        }
-                        continue;
-                    }
-
-                    if (dataPageEntry.freeSpace >= requiredSpace){
-                        // use this page: pre-deduct the free space
-                        dataPageEntry.freeSpace -= requiredSpace;
-                        headerPageBuffer.position(headerPageBuffer.position() - DATA_HEADER_SIZE);
-                        // overwrite this data page entry
-                        dataPageEntry.toBytes(headerPageBuffer);
-                        return bufferManager.fetchPage(dataPageEntry.pagNum);
-                    }
-                }
-
-                // find first unallocated
-                if (unusedSlot != -1){
-                    // allocate a new page
-                    Page dataPage = bufferManager.fetchNewPage(partNum);
-                    DataPageEntry dataPageEntry = new DataPageEntry(dataPage.getPageNum(), (short)(EFFECTIVE_PAGE_SIZE - requiredSpace));
-                    headerPageBuffer.position(HEADER_HEADER_SIZE + unusedSlot * DATA_HEADER_SIZE);
-                    dataPageEntry.toBytes(headerPageBuffer);
-
-                    dataPage.getBuffer().putInt(pageDirectoryId).putInt(headerOffset).putShort(unusedSlot);
-                    ++this.numDataPages;
-                    return dataPage;
-                }
-
-                // if we have no next header page, make one
-                if (this.next == null) {
-                    this.addNewHeaderPage();
+                this.page.getBuffer().get(buf);
+            }finally {
+                this.page.unpin();
+            }
+            Buffer headerBuf = ByteBuffer.wrap(buf);
+            headerBuf.position(HEADER_HEADER_SIZE);
+            for (short i = 0; i < HEADER_ENTRY_COUNT; i++){
+                DataPageEntry dataPageEntry = DataPageEntry.fromBytes(headerBuf);
+                if (dataPageEntry.isValid()){
+                    fsm.addPage(dataPageEntry.pagNum, headerIndex, i, dataPageEntry.freeSpace);
                 }
+            }
+        }
 
-                // no space on this header page, try next one
-                return this.next.fetchPageWithSpace(requiredSpace);
+        /**
+         * Overwrite the data page entry at index.
+         * **/
+        private void writeEntry(short index, DataPageEntry dataPageEntry){
+            this.page.pin();
+            try{
+                Buffer headerBuf = this.page.getBuffer();
+                headerBuf.position(HEADER_HEADER_SIZE + index * DataPageEntry.SIZE);
+                dataPageEntry.toBytes(headerBuf);
             }finally {
                 this.page.unpin();
             }
         }
 
+        /**
+         * Allocate a new data page managed by the unused data page entry at index,
+         * with requiredSpace of it pre-deducted.
+         * @return the new data page, pinned.
+         * **/
+        private Page allocDataPage(short index, short requiredSpace){
+            Page dataPage = bufferManager.fetchNewPage(partNum);
+            writeEntry(index, new DataPageEntry(dataPage.getPageNum(), (short)(EFFECTIVE_PAGE_SIZE - requiredSpace)));
+            dataPage.getBuffer().putInt(pageDirectoryId).putInt(headerOffset).putShort(index);
+            ++this.numDataPages;
+            return dataPage;
+        }
+
         /**
          * update free space of data pag entry of the header page managing the data page
          * @param dataPage
          * @param index of the data page entry in the header page
          * @param newFreeSpace
+         * @param free whether to deallocate the data page, which must be empty.
          * **/
-        private void updateSpace(Page dataPage, short index, short newFreeSpace){
+        private void updateSpace(Page dataPage, short index, short newFreeSpace, boolean free){
             page.pin();
             try{
                 Buffer headerBuf = page.getBuffer();
-                if (newFreeSpace < EFFECTIVE_PAGE_SIZE){
+                if (!free){
                     headerBuf.position(HEADER_HEADER_SIZE + index * DATA_HEADER_SIZE);
                     DataPageEntry dataPageEntry = DataPageEntry.fromBytes(headerBuf);
                     dataPageEntry.freeSpace = newFreeSpace;
                     headerBuf.position(HEADER_HEADER_SIZE + index * DATA_HEADER_SIZE);
                     dataPageEntry.toBytes(headerBuf);
                 }else{
-                    //newFreeSpace is larger than the free space of a page, just deallocate the page
+                    //the data page is empty, just deallocate the page
                     DataPageEntry dataPageEntry = new DataPageEntry();
                     headerBuf.position(HEADER_HEADER_SIZE + index * DATA_HEADER_SIZE);
                     dataPageEntry.toBytes(headerBuf);
+                    --numDataPages;
                     bufferManager.freePage(dataPage);
                 }
             }finally {
@@ -367,23 +604,6 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             }
         }
 
-        private void addNewHeaderPage() {
-            if (next != null){
-                this.next.addNewHeaderPage();
-                return;
-            }
-            Page page = bufferManager.fetchNewPage(partNum); //page has pinned
-            this.page.pin();
-            try{
-                next = new HeaderPage(page.getPageNum(), headerOffset + 1 ,false);
-                // update next header page num field for current header page
-                this.page.getBuffer().position(NEXT_HEADER_POSITION).putLong(page.getPageNum());
-            }finally {
-                this.page.unpin();
-                page.unpin();
-            }
-        }
-
         @Override
         public BacktrackingIterator<Page> iterator() {
             return new DataPageIterator();
@@ -412,7 +632,7 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                             return i;
                         }
                     }
-                    return HEADER_HEADER_SIZE;
+                    return HEADER_ENTRY_COUNT;
                 }finally {
                     HeaderPage.this.page.unpin();
                 }
@@ -440,51 +660,44 @@ public class PageDirectory implements BacktrackingIterable<Page> {
      * Iterator over the header pages of this page directory.
      * */
     class HeaderPageIterator implements BacktrackingIterator<BacktrackingIterable<Page>> {
-        private HeaderPage nextHeaderPage;
-        private HeaderPage prevHeaderPage;
-        private HeaderPage markedHeaderPage;
+        private int nextIndex;
+        private int markedIndex;
 
         private HeaderPageIterator() {
-            this.nextHeaderPage = firstHeader;
-            this.prevHeaderPage = null;
-            this.markedHeaderPage = null;
+            this.nextIndex = 0;
+            this.markedIndex = -1;
         }
 
         @Override
         public void markPrev() {
-            if (this.prevHeaderPage != null){
-                markedHeaderPage = this.prevHeaderPage;
+            if (this.nextIndex > 0){
+                markedIndex = this.nextIndex - 1;
             }
         }
 
         @Override
         public void markNext() {
-            markedHeaderPage = this.nextHeaderPage.next;
+            markedIndex = this.nextIndex;
         }
 
         @Override
         public void reset() {
-            if (this.markedHeaderPage != null){
-                this.nextHeaderPage = this.markedHeaderPage;
-                this.prevHeaderPage = null;
+            if (this.markedIndex != -1){
+                this.nextIndex = this.markedIndex;
             }
         }
 
         @Override
         public boolean hasNext() {
-            return nextHeaderPage != null;
+            return nextIndex < headers.size();
         }
 
         @Override
         public BacktrackingIterable<Page> next() {
-            HeaderPage result = this.nextHeaderPage;
-            if (prevHeaderPage == null){
-                prevHeaderPage = this.nextHeaderPage;
-            }else{
-                prevHeaderPage = prevHeaderPage.next;
+            if (!hasNext()){
+                throw new NoSuchElementException();
             }
-            this.nextHeaderPage = this.nextHeaderPage.next;
-            return result;
+            return headers.get(nextIndex++);
         }
     }
 }
@@ -0,0 +1,132 @@
+package org.csfundamental.database.table;
+
+import org.csfundamental.database.buffer.Page;
+import org.csfundamental.database.common.ByteBuffer;
+import org.csfundamental.database.table.databox.DataBox;
+import org.csfundamental.database.table.databox.Type;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Placement of the records of a table within its data pages, after the data page
+ * header of the page directory (PageDirectory.DATA_HEADER_SIZE bytes).
+ *
+ * Records are addressed by slot number. Free space reported by a layout is what the
+ * page directory should advertise for the page: a record r fits in a page iff
+ * getRequiredSpace(r) <= getFreeSpace(page).
+ *
+ * Pages passed to a layout must be pinned by the caller.
+ * */
+interface PageLayout {
+    /**
+     * @return space to request from the page directory to insert the record.
+     * */
+    short getRequiredSpace(Record record);
+
+    /**
+     * Insert the record into the page.
+     * @return slot of the record, or -1 if the page has no room for it.
+     * */
+    int insertRecord(Page page, Record record);
+
+    /**
+     * Insert records into the page until it has no room left, starting with first.
+     * Record ids of the inserted records are appended to rids.
+     * @return the first record that did not fit, or null if all the records were inserted.
+     * */
+    default Record fillPage(Page page, Record first, Iterator<Record> rest, List<RecordId> rids) {
+        Record record = first;
+        while (record != null) {
+            int slot = insertRecord(page, record);
+            if (slot < 0) {
+                return record;
+            }
+            rids.add(new RecordId(page.getPageNum(), (short) slot));
+            record = rest.hasNext() ? rest.next() : null;
+        }
+        return null;
+    }
+
+    /**
+     * @throws org.csfundamental.database.DatabaseException if the slot holds no record.
+     * */
+    Record getRecord(Page page, int slot);
+
+    /**
+     * Decode a single field of the record at the slot, reading only the bytes it needs.
+     * @throws org.csfundamental.database.DatabaseException if the slot holds no record.
+     * */
+    DataBox readField(Page page, int slot, int column);
+
+    /**
+     * @return the field of the given type encoded at the position of the page, read with a single read.
+     * */
+    static DataBox readField(Page page, int position, Type type) {
+        byte[] bytes = new byte[type.getSizeInBytes()];
+        page.getBuffer().position(position).get(bytes);
+        return DataBox.fromBytes(ByteBuffer.wrap(bytes), type);
+    }
+
+    /**
+     * Overwrite the record at the slot in place.
+     * @return false if the page has no room for the new version of the record, in
+     * which case the page is left unchanged.
+     * @throws org.csfundamental.database.DatabaseException if the slot holds no record.
+     * */
+    boolean updateRecord(Page page, int slot, Record record);
+
+    /**
+     * Delete the records at the slots, with a single update of the slot bookkeeping.
+     * @return number of records left in the page.
+     * @throws org.csfundamental.database.DatabaseException if a slot holds no record.
+     * */
+    int deleteRecords(Page page, int[] slots);
+
+    /**
+     * @return slots holding a record, in increasing order.
+     * */
+    int[] getLiveSlots(Page page);
+
+    /**
+     * @return records of the page in slot order, read with a single read of the page.
+     * */
+    List<Record> getRecords(Page page);
+
+    /**
+     * @param columns indices of the fields to decode, in the order of the projected records.
+     * @return records of the page in slot order, holding only the requested fields.
+     * */
+    default List<Record> getRecords(Page page, int[] columns) {
+        List<Record> records = getRecords(page);
+        for (int i = 0; i < records.size(); i++) {
+            records.set(i, records.get(i).project(columns));
+        }
+        return records;
+    }
+
+    /**
+     * Add the records of the page at or after fromSlot to the batch, in slot order, until
+     * the batch is full.
+     * @return slot to resume from once the batch is full, or -1 if every such record was added.
+     * */
+    default int fillBatch(Page page, int fromSlot, RecordBatch batch) {
+        int[] slots = getLiveSlots(page);
+        List<Record> records = getRecords(page);
+        int i = 0;
+        while (i < slots.length && slots[i] < fromSlot) {
+            i++;
+        }
+        while (i < slots.length && !batch.isFull()) {
+            batch.add(records.get(i++));
+        }
+        return i < slots.length ? slots[i] : -1;
+    }
+
+    short getFreeSpace(Page page);
+
+    /**
+     * @return upper bound of the number of records a page can hold.
+     * */
+    int getMaxRecordsPerPage();
+}
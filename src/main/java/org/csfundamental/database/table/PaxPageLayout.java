@@ -0,0 +1,165 @@
+package org.csfundamental.database.table;
+
+import org.csfundamental.database.buffer.Page;
+import org.csfundamental.database.common.Bits;
+import org.csfundamental.database.common.Buffer;
+import org.csfundamental.database.common.ByteBuffer;
+import org.csfundamental.database.table.databox.DataBox;
+import org.csfundamental.database.table.databox.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Fixed-width records partitioned by column (PAX). Layout of a data page:
+ * bitmapSizeInBytes bytes: bitmap of used slots, as in FixedPageLayout
+ * for each field i: numRecordsPerPage * (size of field i) bytes: minipage of field i
+ *
+ * The number of records per page is the same as with FixedPageLayout. A projected scan
+ * reads the bitmap and the minipages of the projected fields only, one read each.
+ * */
+class PaxPageLayout extends FixedPageLayout {
+    // offset in the page of the minipage of each field
+    private final int[] minipageOffsets;
+
+    PaxPageLayout(Schema schema, int pageSize) {
+        super(schema, pageSize);
+        this.minipageOffsets = new int[schema.size()];
+        int offset = PageDirectory.DATA_HEADER_SIZE + bitmapSizeInBytes;
+        for (int i = 0; i < schema.size(); i++) {
+            minipageOffsets[i] = offset;
+            offset += numRecordsPerPage * schema.getFieldType(i).getSizeInBytes();
+        }
+    }
+
+    private int fieldOffset(int column, int slot) {
+        return minipageOffsets[column] + slot * schema.getFieldType(column).getSizeInBytes();
+    }
+
+    @Override
+    public int insertRecord(Page page, Record record) {
+        byte[] bitMap = getBitMap(page);
+        int slot = bitmapSizeInBytes == 0 ? 0 : nextFreeSlot(bitMap, 0);
+        if (slot == numRecordsPerPage) {
+            return -1;
+        }
+        Buffer buf = page.getBuffer();
+        for (int i = 0; i < schema.size(); i++) {
+            record.getValue(i).writeTo(buf.position(fieldOffset(i, slot)));
+        }
+        Bits.setBit(bitMap, slot, Bits.Bit.ONE);
+        writeBitMap(page, bitMap);
+        return slot;
+    }
+
+    /**
+     * Writes each run of consecutive free slots with a single write per minipage, and the bitmap once.
+     * */
+    @Override
+    public Record fillPage(Page page, Record first, Iterator<Record> rest, List<RecordId> rids) {
+        if (bitmapSizeInBytes == 0) {
+            return super.fillPage(page, first, rest, rids);
+        }
+        byte[] bitMap = getBitMap(page);
+        Record record = first;
+        int slot = nextFreeSlot(bitMap, 0);
+        while (slot < numRecordsPerPage && record != null) {
+            int runEnd = nextUsedSlot(bitMap, slot + 1);
+            byte[][] runs = new byte[schema.size()][];
+            Buffer[] columns = new Buffer[schema.size()];
+            for (int i = 0; i < columns.length; i++) {
+                runs[i] = new byte[(runEnd - slot) * schema.getFieldType(i).getSizeInBytes()];
+                columns[i] = ByteBuffer.wrap(runs[i]);
+            }
+            int runStart = slot;
+            while (slot < runEnd && record != null) {
+                for (int i = 0; i < columns.length; i++) {
+                    record.getValue(i).writeTo(columns[i]);
+                }
+                rids.add(new RecordId(page.getPageNum(), (short) slot));
+                slot++;
+                record = rest.hasNext() ? rest.next() : null;
+            }
+            Buffer buf = page.getBuffer();
+            for (int i = 0; i < columns.length; i++) {
+                byte[] bytes = Arrays.copyOf(runs[i], columns[i].position());
+                buf.position(fieldOffset(i, runStart)).put(bytes);
+            }
+            Bits.setBits(bitMap, runStart, slot, Bits.Bit.ONE);
+            slot = nextFreeSlot(bitMap, slot);
+        }
+        writeBitMap(page, bitMap);
+        return record;
+    }
+
+    @Override
+    public Record getRecord(Page page, int slot) {
+        checkSlot(page, getBitMap(page), slot);
+        List<DataBox> values = new ArrayList<>(schema.size());
+        Buffer buf = page.getBuffer();
+        for (int i = 0; i < schema.size(); i++) {
+            values.add(DataBox.fromBytes(buf.position(fieldOffset(i, slot)), schema.getFieldType(i)));
+        }
+        return new Record(values);
+    }
+
+    @Override
+    public DataBox readField(Page page, int slot, int column) {
+        checkSlot(page, getBitMap(page), slot);
+        return PageLayout.readField(page, fieldOffset(column, slot), schema.getFieldType(column));
+    }
+
+    @Override
+    public boolean updateRecord(Page page, int slot, Record record) {
+        checkSlot(page, getBitMap(page), slot);
+        Buffer buf = page.getBuffer();
+        for (int i = 0; i < schema.size(); i++) {
+            record.getValue(i).writeTo(buf.position(fieldOffset(i, slot)));
+        }
+        return true;
+    }
+
+    /**
+     * Minipages are read with the rest of the page in fillBatch, and copied column by column.
+     * */
+    @Override
+    int fieldPosition(int column, int slot) {
+        return fieldOffset(column, slot) - PageDirectory.DATA_HEADER_SIZE;
+    }
+
+    @Override
+    public List<Record> getRecords(Page page) {
+        int[] columns = new int[schema.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = i;
+        }
+        return getRecords(page, columns);
+    }
+
+    @Override
+    public List<Record> getRecords(Page page, int[] columns) {
+        int[] slots = getLiveSlots(page);
+        List<List<DataBox>> values = new ArrayList<>(slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            values.add(new ArrayList<>(columns.length));
+        }
+        for (int column : columns) {
+            // decode the minipage of the column, reading it as a whole
+            Type type = schema.getFieldType(column);
+            byte[] minipage = new byte[numRecordsPerPage * type.getSizeInBytes()];
+            page.getBuffer().position(minipageOffsets[column]).get(minipage);
+            Buffer buf = ByteBuffer.wrap(minipage);
+            for (int i = 0; i < slots.length; i++) {
+                buf.position(slots[i] * type.getSizeInBytes());
+                values.get(i).add(DataBox.fromBytes(buf, type));
+            }
+        }
+        List<Record> records = new ArrayList<>(slots.length);
+        for (List<DataBox> recordValues : values) {
+            records.add(new Record(recordValues));
+        }
+        return records;
+    }
+}
@@ -1,15 +1,20 @@
 package org.csfundamental.database.table;
 
 import org.csfundamental.database.common.Buffer;
+import org.csfundamental.database.common.ByteBuffer;
 import org.csfundamental.database.table.databox.DataBox;
+import org.csfundamental.database.table.databox.StringDataBox;
 import org.csfundamental.database.table.databox.Type;
+import org.csfundamental.database.table.databox.TypeId;
 
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Records of the table.
+ *
+ * Fields are read through getValue or the typed getters, which subclasses such as
+ * PackedRecord may serve without a DataBox per field.
  * **/
 public class Record {
     List<DataBox> dataBoxes;
@@ -34,11 +39,86 @@ public class Record {
     }
 
     public byte[] toBytes(Schema schema){
-        ByteBuffer buf = ByteBuffer.allocate(schema.getSizeInBytes());
-        for (DataBox dataBox : dataBoxes){
-            buf.put(dataBox.toBytes());
+        byte[] bytes = new byte[schema.getSizeInBytes()];
+        writeTo(ByteBuffer.wrap(bytes), schema);
+        return bytes;
+    }
+
+    /**
+     * Write the encoding of toBytes at the position of dst, field by field, without
+     * intermediate arrays.
+     * */
+    public void writeTo(Buffer dst, Schema schema){
+        for (int i = 0; i < size(); i++){
+            getValue(i).writeTo(dst);
+        }
+    }
+
+    /**
+     * Variable-length encoding: strings are stored as a 2-byte length followed by
+     * their bytes instead of being padded to their declared size.
+     * Other fields are encoded as in toBytes.
+     * */
+    public byte[] toVarBytes(Schema schema){
+        byte[] bytes = new byte[getVarSize(schema)];
+        writeVarTo(ByteBuffer.wrap(bytes), schema);
+        return bytes;
+    }
+
+    /**
+     * Write the encoding of toVarBytes at the position of dst.
+     * */
+    public void writeVarTo(Buffer dst, Schema schema){
+        for (int i = 0; i < size(); i++){
+            getValue(i).writeVarTo(dst);
+        }
+    }
+
+    /**
+     * @return length of the encoding of toVarBytes.
+     * */
+    public int getVarSize(Schema schema){
+        int size = 0;
+        for (int i = 0; i < size(); i++){
+            size += getValue(i).getVarSizeInBytes();
+        }
+        return size;
+    }
+
+    public static Record fromVarBytes(Buffer buf, Schema schema){
+        List<DataBox> dataBoxes = new ArrayList<>();
+        for (Type fieldType : schema.getFieldTypes()) {
+            if (fieldType.getTypeId() == TypeId.STRING){
+                byte[] bytes = new byte[buf.getShort()];
+                buf.get(bytes);
+                dataBoxes.add(new StringDataBox(new String(bytes), fieldType.getSizeInBytes()));
+            }else{
+                dataBoxes.add(DataBox.fromBytes(buf, fieldType));
+            }
+        }
+        return new Record(dataBoxes);
+    }
+
+    /**
+     * @return record with the fields at the given indices, in that order.
+     * */
+    public Record project(int[] columns){
+        List<DataBox> values = new ArrayList<>(columns.length);
+        for (int column : columns){
+            values.add(getValue(column));
         }
-        return buf.array();
+        return new Record(values);
+    }
+
+    /**
+     * @return copy of this record with the field at index replaced by value.
+     * */
+    public Record withValue(int index, DataBox value){
+        List<DataBox> values = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++){
+            values.add(i == index ? value : getValue(i));
+        }
+        return new Record(values);
     }
 
     public int size(){
@@ -51,15 +131,48 @@ public class Record {
         if (o == null) return false;
         if (!(o instanceof Record)) return false;
         Record r = (Record) o;
-        return dataBoxes.equals(r.dataBoxes);
+        if (size() != r.size()) return false;
+        for (int i = 0; i < size(); i++){
+            if (!getValue(i).equals(r.getValue(i))) return false;
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return dataBoxes.hashCode();
+        // same as List.hashCode of the values
+        int hashCode = 1;
+        for (int i = 0; i < size(); i++){
+            hashCode = 31 * hashCode + getValue(i).hashCode();
+        }
+        return hashCode;
     }
 
     public DataBox getValue(int index) {
         return dataBoxes.get(index);
     }
+
+    public boolean getBool(int index) {
+        return getValue(index).getBool();
+    }
+
+    public int getInt(int index) {
+        return getValue(index).getInt();
+    }
+
+    public long getLong(int index) {
+        return getValue(index).getLong();
+    }
+
+    public float getFloat(int index) {
+        return getValue(index).getFloat();
+    }
+
+    public String getString(int index) {
+        return getValue(index).getString();
+    }
+
+    public byte[] getByteArray(int index) {
+        return getValue(index).getByteArray();
+    }
 }
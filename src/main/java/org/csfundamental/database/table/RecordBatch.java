@@ -0,0 +1,318 @@
+package org.csfundamental.database.table;
+
+import org.csfundamental.database.common.iterator.ArrayBacktrackingIterator;
+import org.csfundamental.database.common.iterator.BacktrackingIterable;
+import org.csfundamental.database.common.iterator.BacktrackingIterator;
+import org.csfundamental.database.common.iterator.ConcatBacktrackingIterator;
+import org.csfundamental.database.common.iterator.IndexBacktrackingIterator;
+import org.csfundamental.database.table.databox.BoolDataBox;
+import org.csfundamental.database.table.databox.ByteArrayDataBox;
+import org.csfundamental.database.table.databox.DataBox;
+import org.csfundamental.database.table.databox.FloatDataBox;
+import org.csfundamental.database.table.databox.IntDataBox;
+import org.csfundamental.database.table.databox.LongDataBox;
+import org.csfundamental.database.table.databox.StringDataBox;
+import org.csfundamental.database.table.databox.Type;
+import org.csfundamental.database.table.databox.TypeId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.IntPredicate;
+
+/**
+ * Batch of rows stored column by column, for operators that process many rows per call.
+ * Each column is a primitive array indexed by row: int[] for INT, long[] for LONG, float[]
+ * for FLOAT, boolean[] for BOOL, String[] for STRING and byte[][] for BYTE_ARRAY.
+ *
+ * The selection vector holds the rows of the batch that are still selected, in increasing
+ * order: filters narrow it instead of moving rows. Iterating over a batch yields the
+ * selected rows as records.
+ * */
+public class RecordBatch implements BacktrackingIterable<Record> {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Schema schema;
+    private final int capacity;
+    private final Object[] columns;
+    private final int[] selection;
+    private int numRows;
+    private int numSelected;
+
+    public RecordBatch(Schema schema, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Record batch capacity must be positive");
+        }
+        this.schema = schema;
+        this.capacity = capacity;
+        this.columns = new Object[schema.size()];
+        for (int i = 0; i < columns.length; i++) {
+            switch (schema.getFieldType(i).getTypeId()) {
+                case BOOL: columns[i] = new boolean[capacity]; break;
+                case INT: columns[i] = new int[capacity]; break;
+                case LONG: columns[i] = new long[capacity]; break;
+                case FLOAT: columns[i] = new float[capacity]; break;
+                case STRING: columns[i] = new String[capacity]; break;
+                case BYTE_ARRAY: columns[i] = new byte[capacity][]; break;
+                default: throw new IllegalArgumentException("Unhandled TypeId " + schema.getFieldType(i).getTypeId());
+            }
+        }
+        this.selection = new int[capacity];
+    }
+
+    public RecordBatch(Schema schema) {
+        this(schema, DEFAULT_CAPACITY);
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public boolean isFull() {
+        return numRows == capacity;
+    }
+
+    /**
+     * Append a row, selected. Fields are read with the typed getters of the record.
+     * */
+    public void add(Record record) {
+        if (isFull()) {
+            throw new IllegalStateException("Record batch is full");
+        }
+        int row = numRows;
+        for (int i = 0; i < columns.length; i++) {
+            switch (schema.getFieldType(i).getTypeId()) {
+                case BOOL: ((boolean[]) columns[i])[row] = record.getBool(i); break;
+                case INT: ((int[]) columns[i])[row] = record.getInt(i); break;
+                case LONG: ((long[]) columns[i])[row] = record.getLong(i); break;
+                case FLOAT: ((float[]) columns[i])[row] = record.getFloat(i); break;
+                case STRING: ((String[]) columns[i])[row] = record.getString(i); break;
+                case BYTE_ARRAY: ((byte[][]) columns[i])[row] = record.getByteArray(i); break;
+            }
+        }
+        selection[numSelected++] = row;
+        numRows++;
+    }
+
+    /**
+     * Set the column of the rows following the last row from their fixed-width encoding,
+     * for layouts that fill batches from the bytes of their pages. Row getNumRows() + k
+     * is read at data[positions[k]]. The rows are only part of the batch once added with
+     * addRows.
+     * */
+    void readColumn(int column, byte[] data, int[] positions, int count) {
+        Type type = schema.getFieldType(column);
+        int row = numRows;
+        switch (type.getTypeId()) {
+            case BOOL: {
+                boolean[] values = (boolean[]) columns[column];
+                for (int k = 0; k < count; k++) {
+                    values[row + k] = data[positions[k]] == 1;
+                }
+                break;
+            }
+            case INT: {
+                int[] values = (int[]) columns[column];
+                for (int k = 0; k < count; k++) {
+                    values[row + k] = PackedRecord.readInt(data, positions[k]);
+                }
+                break;
+            }
+            case LONG: {
+                long[] values = (long[]) columns[column];
+                for (int k = 0; k < count; k++) {
+                    values[row + k] = PackedRecord.readLong(data, positions[k]);
+                }
+                break;
+            }
+            case FLOAT: {
+                float[] values = (float[]) columns[column];
+                for (int k = 0; k < count; k++) {
+                    values[row + k] = Float.intBitsToFloat(PackedRecord.readInt(data, positions[k]));
+                }
+                break;
+            }
+            case STRING: {
+                String[] values = (String[]) columns[column];
+                for (int k = 0; k < count; k++) {
+                    values[row + k] = PackedRecord.readString(data, positions[k], type.getSizeInBytes());
+                }
+                break;
+            }
+            case BYTE_ARRAY: {
+                byte[][] values = (byte[][]) columns[column];
+                for (int k = 0; k < count; k++) {
+                    values[row + k] = Arrays.copyOfRange(data, positions[k], positions[k] + type.getSizeInBytes());
+                }
+                break;
+            }
+            default: throw new IllegalArgumentException("Unhandled TypeId " + type.getTypeId());
+        }
+    }
+
+    /**
+     * Add the count rows following the last row, selected, once their columns are set
+     * with readColumn.
+     * */
+    void addRows(int count) {
+        if (count > capacity - numRows) {
+            throw new IllegalStateException("Record batch is full");
+        }
+        for (int k = 0; k < count; k++) {
+            selection[numSelected++] = numRows + k;
+        }
+        numRows += count;
+    }
+
+    /**
+     * Remove all the rows, keeping the column arrays for reuse.
+     * */
+    public void clear() {
+        numRows = 0;
+        numSelected = 0;
+    }
+
+    /**
+     * @return rows still selected, in selection[0..getNumSelected()).
+     * */
+    public int[] getSelection() {
+        return selection;
+    }
+
+    public int getNumSelected() {
+        return numSelected;
+    }
+
+    /**
+     * Narrow the selection to the selected rows for which row holds.
+     * */
+    public void filter(IntPredicate row) {
+        int n = 0;
+        for (int i = 0; i < numSelected; i++) {
+            if (row.test(selection[i])) {
+                selection[n++] = selection[i];
+            }
+        }
+        numSelected = n;
+    }
+
+    private Object column(int column, TypeId typeId) {
+        if (schema.getFieldType(column).getTypeId() != typeId) {
+            throw new RuntimeException(String.format("field %d is not of type %s", column, typeId));
+        }
+        return columns[column];
+    }
+
+    public boolean[] getBoolColumn(int column) {
+        return (boolean[]) column(column, TypeId.BOOL);
+    }
+
+    public int[] getIntColumn(int column) {
+        return (int[]) column(column, TypeId.INT);
+    }
+
+    public long[] getLongColumn(int column) {
+        return (long[]) column(column, TypeId.LONG);
+    }
+
+    public float[] getFloatColumn(int column) {
+        return (float[]) column(column, TypeId.FLOAT);
+    }
+
+    public String[] getStringColumn(int column) {
+        return (String[]) column(column, TypeId.STRING);
+    }
+
+    public byte[][] getByteArrayColumn(int column) {
+        return (byte[][]) column(column, TypeId.BYTE_ARRAY);
+    }
+
+    /**
+     * @return the row as a record, whether it is selected or not.
+     * */
+    public Record getRecord(int row) {
+        List<DataBox> values = new ArrayList<>(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            Type type = schema.getFieldType(i);
+            switch (type.getTypeId()) {
+                case BOOL: values.add(new BoolDataBox(((boolean[]) columns[i])[row])); break;
+                case INT: values.add(new IntDataBox(((int[]) columns[i])[row])); break;
+                case LONG: values.add(new LongDataBox(((long[]) columns[i])[row])); break;
+                case FLOAT: values.add(new FloatDataBox(((float[]) columns[i])[row])); break;
+                case STRING: values.add(new StringDataBox(((String[]) columns[i])[row], type.getSizeInBytes())); break;
+                case BYTE_ARRAY: values.add(new ByteArrayDataBox(((byte[][]) columns[i])[row], type.getSizeInBytes())); break;
+            }
+        }
+        return new Record(values);
+    }
+
+    /**
+     * @return iterator over the selected rows, as records.
+     * */
+    @Override
+    public BacktrackingIterator<Record> iterator() {
+        List<Record> records = new ArrayList<>(numSelected);
+        for (int i = 0; i < numSelected; i++) {
+            records.add(getRecord(selection[i]));
+        }
+        return new ArrayBacktrackingIterator<>(records);
+    }
+
+    /**
+     * Adapter from a record iterator: batches of up to capacity records, in order.
+     * */
+    public static Iterator<RecordBatch> batches(Iterator<Record> records, Schema schema, int capacity) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public RecordBatch next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RecordBatch batch = new RecordBatch(schema, capacity);
+                while (!batch.isFull() && records.hasNext()) {
+                    batch.add(records.next());
+                }
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * Adapter to a record iterator over the selected rows of the batches. Batches are
+     * consumed once: the returned iterator keeps those it has read to backtrack.
+     * */
+    public static BacktrackingIterator<Record> records(Iterator<RecordBatch> batches) {
+        List<RecordBatch> read = new ArrayList<>();
+        // batches are read on demand, and indexed once read so that marks can go back to them
+        return new ConcatBacktrackingIterator<>(new IndexBacktrackingIterator<BacktrackingIterable<Record>>(Integer.MAX_VALUE) {
+            @Override
+            protected int getNextNonEmpty(int currentIndex) {
+                int index = currentIndex + 1;
+                if (index == read.size() && batches.hasNext()) {
+                    read.add(batches.next());
+                }
+                return index < read.size() ? index : Integer.MAX_VALUE;
+            }
+
+            @Override
+            protected BacktrackingIterable<Record> getValue(int index) {
+                return read.get(index);
+            }
+        });
+    }
+}
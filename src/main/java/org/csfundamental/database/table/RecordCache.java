@@ -0,0 +1,96 @@
+package org.csfundamental.database.table;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of decoded records keyed by record id, for repeated point lookups of the
+ * same rows. When the cache holds capacity records, the least recently used one is evicted.
+ *
+ * The table invalidates the entry of a record when the record is updated or deleted. A
+ * record read from its page is only cached if no invalidation of its entry happened since
+ * the read started (see getVersion), so that a read racing with an update cannot cache
+ * the old version after the update has invalidated the entry.
+ * */
+class RecordCache {
+    private static final int NUM_VERSIONS = 64;
+
+    private final int capacity;
+    // in access order: least recently used first
+    private final LinkedHashMap<RecordId, Record> records;
+    // invalidation counts, by hash of record id
+    private final long[] versions;
+    private long hits;
+    private long misses;
+
+    RecordCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Record cache capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.versions = new long[NUM_VERSIONS];
+        this.records = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RecordId, Record> eldest) {
+                return size() > RecordCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the cached record, or null.
+     * */
+    synchronized Record get(RecordId rid) {
+        Record record = records.get(rid);
+        if (record == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return record;
+    }
+
+    /**
+     * @return version of the entry of rid, to be read before the record is read from its page.
+     * */
+    synchronized long getVersion(RecordId rid) {
+        return versions[versionIndex(rid)];
+    }
+
+    /**
+     * Cache the record, unless the entry was invalidated since version was read.
+     * */
+    synchronized void put(RecordId rid, Record record, long version) {
+        if (versions[versionIndex(rid)] == version) {
+            records.put(rid, record);
+        }
+    }
+
+    synchronized void invalidate(RecordId rid) {
+        records.remove(rid);
+        versions[versionIndex(rid)]++;
+    }
+
+    synchronized void clear() {
+        records.clear();
+        for (int i = 0; i < versions.length; i++) {
+            versions[i]++;
+        }
+    }
+
+    private static int versionIndex(RecordId rid) {
+        return Math.floorMod(rid.hashCode(), NUM_VERSIONS);
+    }
+
+    synchronized int size() {
+        return records.size();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+}
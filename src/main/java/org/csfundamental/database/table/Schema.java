@@ -3,35 +3,58 @@ package org.csfundamental.database.table;
 import org.csfundamental.database.common.Buffer;
 import org.csfundamental.database.table.databox.DataBox;
 import org.csfundamental.database.table.databox.Type;
+import org.csfundamental.database.table.databox.TypeId;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 
+/**
+ * Names and types of the fields of records. Byte offsets of the fields in the fixed-width
+ * encoding (see Record.toBytes) and the index of each field name are maintained as fields
+ * are added, so that a field is located in constant time.
+ * */
 public class Schema {
     public static int MAX_SCHEMA_SIZE;
     private List<String> fieldNames;
     private List<Type> fieldTypes;
     private int sizeInBytes;
+    private int[] fieldOffsets;
+    private final Map<String, Integer> fieldIndices;
+    // whether the variable-length encoding (see Record.toVarBytes) is fixed-width too
+    private boolean fixedWidth;
 
     public Schema() {
         this.fieldNames = new ArrayList<>();
         this.fieldTypes = new ArrayList<>();
         this.sizeInBytes = 0;
+        this.fieldOffsets = new int[0];
+        this.fieldIndices = new HashMap<>();
+        this.fixedWidth = true;
     }
 
     public Schema(List<String> fieldNames, List<Type> fieldTypes){
+        this();
         assert fieldNames.size() == fieldTypes.size();
         assert fieldNames.size() > 0;
-        this.fieldNames = fieldNames;
-        this.fieldTypes = fieldTypes;
+        for (int i = 0; i < fieldNames.size(); i++){
+            add(fieldNames.get(i), fieldTypes.get(i));
+        }
     }
 
     public Schema add(String fieldName, Type fieldType){
         this.fieldNames.add(fieldName);
         this.fieldTypes.add(fieldType);
+        this.fieldOffsets = Arrays.copyOf(fieldOffsets, fieldNames.size());
+        this.fieldOffsets[fieldNames.size() - 1] = sizeInBytes;
+        // the first field of a name wins
+        this.fieldIndices.putIfAbsent(fieldName, fieldNames.size() - 1);
+        this.fixedWidth &= fieldType.getTypeId() != TypeId.STRING;
         this.sizeInBytes +=  fieldType.getSizeInBytes();
         return this;
     }
@@ -98,7 +121,22 @@ public class Schema {
     }
 
     public List<String> getFieldNames() {
-        return null;
+        return fieldNames;
+    }
+
+    /**
+     * @return offset in bytes of the field in the fixed-width encoding of records.
+     * */
+    public int getFieldOffset(int index) {
+        return this.fieldOffsets[index];
+    }
+
+    /**
+     * @return whether records of this schema have the same size in the fixed-width and
+     * the variable-length encodings, i.e. have no string field.
+     * */
+    public boolean isFixedWidth() {
+        return fixedWidth;
     }
 
     public void verify(Record r) {
@@ -128,10 +166,9 @@ public class Schema {
     }
 
     public Integer findField(String fieldName) {
-        for (int i = 0; i < size(); i++){
-            if (this.getFieldName(i).equals(fieldName)){
-                return i;
-            }
+        Integer index = this.fieldIndices.get(fieldName);
+        if (index != null){
+            return index;
         }
 
         throw new RuntimeException("No column " + fieldName + " found in " + toString());
@@ -0,0 +1,306 @@
+package org.csfundamental.database.table;
+
+import org.csfundamental.database.DatabaseException;
+import org.csfundamental.database.buffer.Page;
+import org.csfundamental.database.common.Buffer;
+import org.csfundamental.database.common.ByteBuffer;
+import org.csfundamental.database.table.databox.DataBox;
+import org.csfundamental.database.table.databox.StringDataBox;
+import org.csfundamental.database.table.databox.Type;
+import org.csfundamental.database.table.databox.TypeId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Variable-length records with a slot directory (see Record.toVarBytes). Layout of a data page:
+ * 2 byte: number of slots
+ * 2 byte: offset of the record data, growing down from the end of the page (0 means the end of the page)
+ * 4 byte per slot:
+ *      2 byte: offset of the record (0 means the slot is free)
+ *      2 byte: length of the record
+ * free space
+ * record data
+ *
+ * Offsets are relative to the end of the data page header. A zeroed page is an empty page.
+ *
+ * Deleting or shrinking a record leaves a hole in the record data. Free space counts the
+ * holes, and the record data is compacted when an insert or update needs them.
+ * */
+class SlottedPageLayout implements PageLayout {
+    static final int HEADER_SIZE = 4;
+    static final int SLOT_SIZE = 4;
+
+    private final Schema schema;
+    private final int pageSize;
+    private final int maxRecordsPerPage;
+
+    SlottedPageLayout(Schema schema, int pageSize) {
+        this.schema = schema;
+        this.pageSize = pageSize;
+        int minRecordSize = 0;
+        for (Type fieldType : schema.getFieldTypes()) {
+            minRecordSize += fieldType.getTypeId() == TypeId.STRING ? Short.BYTES : fieldType.getSizeInBytes();
+        }
+        this.maxRecordsPerPage = (pageSize - HEADER_SIZE) / (Math.max(minRecordSize, 1) + SLOT_SIZE);
+    }
+
+    @Override
+    public int getMaxRecordsPerPage() {
+        return maxRecordsPerPage;
+    }
+
+    @Override
+    public short getRequiredSpace(Record record) {
+        int requiredSpace = record.getVarSize(schema) + SLOT_SIZE;
+        if (requiredSpace > pageSize - HEADER_SIZE) {
+            throw new DatabaseException(String.format(
+                    "Record of size %d bytes is larger than effective page size", requiredSpace));
+        }
+        return (short) requiredSpace;
+    }
+
+    /**
+     * Header and slot directory of a page, read with a single read.
+     * */
+    private class Directory {
+        final int numSlots;
+        final int dataStart;
+        final Buffer slots;
+
+        Directory(Page page) {
+            Buffer buf = page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE);
+            this.numSlots = Short.toUnsignedInt(buf.getShort());
+            int dataStart = Short.toUnsignedInt(buf.getShort());
+            this.dataStart = dataStart == 0 ? pageSize : dataStart;
+            byte[] bytes = new byte[numSlots * SLOT_SIZE];
+            if (numSlots > 0) {
+                page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE + HEADER_SIZE).get(bytes);
+            }
+            this.slots = ByteBuffer.wrap(bytes);
+        }
+
+        int offset(int slot) {
+            return Short.toUnsignedInt(slots.getShort(slot * SLOT_SIZE));
+        }
+
+        int length(int slot) {
+            return Short.toUnsignedInt(slots.getShort(slot * SLOT_SIZE + Short.BYTES));
+        }
+
+        /**
+         * @return contiguous space between the slot directory and the record data.
+         * */
+        int gapSpace() {
+            return dataStart - HEADER_SIZE - numSlots * SLOT_SIZE;
+        }
+
+        /**
+         * @return free space once the record data is compacted.
+         * */
+        int freeSpace() {
+            int liveBytes = 0;
+            for (int i = 0; i < numSlots; i++) {
+                if (offset(i) != 0) {
+                    liveBytes += length(i);
+                }
+            }
+            return pageSize - HEADER_SIZE - numSlots * SLOT_SIZE - liveBytes;
+        }
+
+        void checkSlot(Page page, int slot) {
+            if (slot < 0 || slot >= numSlots || offset(slot) == 0) {
+                throw new DatabaseException(String.format("No record at slot %d of page %d", slot, page.getPageNum()));
+            }
+        }
+    }
+
+    /**
+     * Rewrite the page with its slots in place and the record data packed at the end of
+     * the page, except for the record of skipSlot which is dropped (-1 to keep them all).
+     * The page is written with a single write.
+     * @return the directory of the compacted page.
+     * */
+    private Directory compact(Page page, int numSlots, int skipSlot) {
+        byte[] bytes = new byte[pageSize];
+        page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE).get(bytes);
+        Buffer buf = ByteBuffer.wrap(bytes);
+        byte[] compacted = new byte[pageSize];
+        Buffer out = ByteBuffer.wrap(compacted);
+        int dataStart = pageSize;
+        for (int i = 0; i < numSlots; i++) {
+            int offset = Short.toUnsignedInt(buf.getShort(HEADER_SIZE + i * SLOT_SIZE));
+            int length = Short.toUnsignedInt(buf.getShort(HEADER_SIZE + i * SLOT_SIZE + Short.BYTES));
+            if (offset == 0 || i == skipSlot) {
+                continue;
+            }
+            dataStart -= length;
+            System.arraycopy(bytes, offset, compacted, dataStart, length);
+            out.putShort(HEADER_SIZE + i * SLOT_SIZE, (short) dataStart)
+               .putShort(HEADER_SIZE + i * SLOT_SIZE + Short.BYTES, (short) length);
+        }
+        out.putShort(0, (short) numSlots).putShort(Short.BYTES, (short) (dataStart == pageSize ? 0 : dataStart));
+        page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE).put(compacted);
+        return new Directory(page);
+    }
+
+    @Override
+    public int insertRecord(Page page, Record record) {
+        int length = record.getVarSize(schema);
+        Directory dir = new Directory(page);
+        int slot = 0;
+        while (slot < dir.numSlots && dir.offset(slot) != 0) {
+            slot++;
+        }
+        int numSlots = Math.max(dir.numSlots, slot + 1);
+        int requiredSpace = length + (slot == dir.numSlots ? SLOT_SIZE : 0);
+        if (requiredSpace > dir.freeSpace()) {
+            return -1;
+        }
+        if (requiredSpace > dir.gapSpace()) {
+            dir = compact(page, dir.numSlots, -1);
+        }
+
+        int offset = dir.dataStart - length;
+        Buffer buf = page.getBuffer();
+        record.writeVarTo(buf.position(PageDirectory.DATA_HEADER_SIZE + offset), schema);
+        buf.position(PageDirectory.DATA_HEADER_SIZE + HEADER_SIZE + slot * SLOT_SIZE)
+           .putShort((short) offset).putShort((short) length);
+        buf.position(PageDirectory.DATA_HEADER_SIZE).putShort((short) numSlots).putShort((short) offset);
+        return slot;
+    }
+
+    @Override
+    public Record getRecord(Page page, int slot) {
+        Directory dir = new Directory(page);
+        dir.checkSlot(page, slot);
+        byte[] bytes = new byte[dir.length(slot)];
+        page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE + dir.offset(slot)).get(bytes);
+        return Record.fromVarBytes(ByteBuffer.wrap(bytes), schema);
+    }
+
+    /**
+     * Fields are located directly if the schema is fixed-width. Otherwise the record is
+     * read, and the fields before the column are skipped without being decoded.
+     * */
+    @Override
+    public DataBox readField(Page page, int slot, int column) {
+        Directory dir = new Directory(page);
+        dir.checkSlot(page, slot);
+        int position = PageDirectory.DATA_HEADER_SIZE + dir.offset(slot);
+        Type type = schema.getFieldType(column);
+        if (schema.isFixedWidth()) {
+            return PageLayout.readField(page, position + schema.getFieldOffset(column), type);
+        }
+        byte[] bytes = new byte[dir.length(slot)];
+        page.getBuffer().position(position).get(bytes);
+        Buffer buf = ByteBuffer.wrap(bytes);
+        for (int i = 0; i < column; i++) {
+            Type fieldType = schema.getFieldType(i);
+            int size = fieldType.getTypeId() == TypeId.STRING ? buf.getShort() : fieldType.getSizeInBytes();
+            buf.position(buf.position() + size);
+        }
+        if (type.getTypeId() == TypeId.STRING) {
+            byte[] value = new byte[buf.getShort()];
+            buf.get(value);
+            return new StringDataBox(new String(value), type.getSizeInBytes());
+        }
+        return DataBox.fromBytes(buf, type);
+    }
+
+    /**
+     * A record that does not grow is overwritten where it is. A record that grows is
+     * moved to the start of the record data, after a compaction if the gap is too small.
+     * */
+    @Override
+    public boolean updateRecord(Page page, int slot, Record record) {
+        int length = record.getVarSize(schema);
+        Directory dir = new Directory(page);
+        dir.checkSlot(page, slot);
+        int offset = dir.offset(slot);
+        if (length > dir.length(slot)) {
+            if (length > dir.freeSpace() + dir.length(slot)) {
+                return false;
+            }
+            if (length > dir.gapSpace()) {
+                dir = compact(page, dir.numSlots, slot);
+            }
+            offset = dir.dataStart - length;
+            page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE + Short.BYTES).putShort((short) offset);
+        }
+        Buffer buf = page.getBuffer();
+        record.writeVarTo(buf.position(PageDirectory.DATA_HEADER_SIZE + offset), schema);
+        buf.position(PageDirectory.DATA_HEADER_SIZE + HEADER_SIZE + slot * SLOT_SIZE)
+           .putShort((short) offset).putShort((short) length);
+        return true;
+    }
+
+    /**
+     * Frees the slots, and drops the free slots at the end of the slot directory.
+     * */
+    @Override
+    public int deleteRecords(Page page, int[] slots) {
+        Directory dir = new Directory(page);
+        for (int slot : slots) {
+            dir.checkSlot(page, slot);
+            dir.slots.putShort(slot * SLOT_SIZE, (short) 0).putShort(slot * SLOT_SIZE + Short.BYTES, (short) 0);
+        }
+        int numSlots = dir.numSlots;
+        while (numSlots > 0 && dir.offset(numSlots - 1) == 0) {
+            numSlots--;
+        }
+        int numLive = 0;
+        for (int i = 0; i < numSlots; i++) {
+            if (dir.offset(i) != 0) {
+                numLive++;
+            }
+        }
+        Buffer buf = page.getBuffer();
+        if (numLive == 0) {
+            // back to an empty page
+            buf.position(PageDirectory.DATA_HEADER_SIZE).putShort((short) 0).putShort((short) 0);
+            return 0;
+        }
+        byte[] slotBytes = new byte[numSlots * SLOT_SIZE];
+        dir.slots.position(0).get(slotBytes);
+        buf.position(PageDirectory.DATA_HEADER_SIZE).putShort((short) numSlots);
+        buf.position(PageDirectory.DATA_HEADER_SIZE + HEADER_SIZE).put(slotBytes);
+        return numLive;
+    }
+
+    @Override
+    public int[] getLiveSlots(Page page) {
+        Directory dir = new Directory(page);
+        int[] slots = new int[dir.numSlots];
+        int numLive = 0;
+        for (int i = 0; i < dir.numSlots; i++) {
+            if (dir.offset(i) != 0) {
+                slots[numLive++] = i;
+            }
+        }
+        return Arrays.copyOf(slots, numLive);
+    }
+
+    @Override
+    public List<Record> getRecords(Page page) {
+        byte[] bytes = new byte[pageSize];
+        page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE).get(bytes);
+        Buffer buf = ByteBuffer.wrap(bytes);
+        int numSlots = Short.toUnsignedInt(buf.getShort());
+
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < numSlots; i++) {
+            int offset = Short.toUnsignedInt(buf.getShort(HEADER_SIZE + i * SLOT_SIZE));
+            if (offset != 0) {
+                records.add(Record.fromVarBytes(buf.position(offset), schema));
+            }
+        }
+        return records;
+    }
+
+    @Override
+    public short getFreeSpace(Page page) {
+        return (short) new Directory(page).freeSpace();
+    }
+}
@@ -5,33 +5,72 @@ import org.csfundamental.database.Transaction;
 import org.csfundamental.database.TransactionContext;
 import org.csfundamental.database.buffer.BufferManager;
 import org.csfundamental.database.buffer.Page;
-import org.csfundamental.database.common.Bits;
-import org.csfundamental.database.common.Buffer;
 import org.csfundamental.database.common.PredicateOperator;
+import org.csfundamental.database.common.iterator.ArrayBacktrackingIterator;
 import org.csfundamental.database.common.iterator.BacktrackingIterable;
 import org.csfundamental.database.common.iterator.BacktrackingIterator;
+import org.csfundamental.database.common.iterator.ConcatBacktrackingIterator;
 import org.csfundamental.database.common.iterator.IndexBacktrackingIterator;
 import org.csfundamental.database.query.QueryPlan;
+import org.csfundamental.database.storage.DiskSpaceManager;
 import org.csfundamental.database.table.databox.DataBox;
+import org.csfundamental.database.table.databox.TypeId;
 
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Table implements BacktrackingIterable<Record> {
     private String name;
     private PageDirectory pgDir;
     private Schema schema;
-    private int bitmapSizeInBytes;
-    private int numRecordsPerPage;
+    private TableFormat format;
+    private PageLayout layout;
+    // null if no column is dictionary encoded
+    private ColumnDictionary dictionary;
+    // null if no column is zone mapped
+    private ZoneMap zoneMap;
+    // null if point lookups are not cached
+    private RecordCache recordCache;
+    // null if no column is stored out of line
+    private OverflowStore overflowStore;
+    private int[] overflowColumns;
 
     public Table(String name, PageDirectory pgDir, Schema schema){
+        this(name, pgDir, schema, TableFormat.FIXED);
+    }
+
+    public Table(String name, PageDirectory pgDir, Schema schema, TableFormat format){
+        this(name, pgDir, schema, format, null);
+    }
+
+    /**
+     * @param dictionary dictionary of the encoded columns of this table, or null. Rows
+     *                   are stored with the codes of encoded columns, and decoded when read.
+     * */
+    public Table(String name, PageDirectory pgDir, Schema schema, TableFormat format, ColumnDictionary dictionary){
         this.name = name;
         this.pgDir = pgDir;
         this.schema = schema;
-
-        this.bitmapSizeInBytes = computeBitmapSizeInBytes(pgDir.getEffectivePageSize(), schema);
-        this.numRecordsPerPage = computeNumRecordsPerPage(pgDir.getEffectivePageSize(), schema);
+        this.format = format;
+        this.dictionary = dictionary;
+        Schema storedSchema = dictionary == null ? schema : dictionary.getEncodedSchema();
+        this.layout = format.createLayout(storedSchema, pgDir.getEffectivePageSize());
     }
 
     public String getName() {
@@ -42,117 +81,660 @@ public class Table implements BacktrackingIterable<Record> {
         return schema;
     }
 
-    public int getNumRecordsPerPage() {
-        return numRecordsPerPage;
+    public TableFormat getFormat() {
+        return format;
     }
 
-    // (x + N * size)
-    private static int computeBitmapSizeInBytes(int pageSize, Schema schema){
-        int recordsPerPage = computeNumRecordsPerPage(pageSize, schema);
-        if (recordsPerPage == 1) return 0;
-        if (recordsPerPage % 8 == 0) return recordsPerPage / 8;
-        return recordsPerPage / 8 + 1;
+    /**
+     * @return number of records per page, or its upper bound for variable-length formats.
+     * */
+    public int getNumRecordsPerPage() {
+        return layout.getMaxRecordsPerPage();
     }
 
     public static int computeNumRecordsPerPage(int pageSize, Schema schema) {
-        int schemaSize = schema.getSizeInBytes();
-        if (schemaSize > pageSize) {
-            throw new DatabaseException(String.format(
-                    "Schema of size %f bytes is larger than effective page size",
-                    schemaSize
-            ));
+        return FixedPageLayout.computeNumRecordsPerPage(pageSize, schema);
+    }
+
+    /**
+     * Deletes all the records of the table at once, by truncating the partition of its page
+     * directory, with the overflow pages of its large values. Dictionary entries are kept.
+     * */
+    public void truncate(){
+        pgDir.truncate();
+        if (zoneMap != null){
+            zoneMap.clear();
         }
-        if (2 * schemaSize + 1 > pageSize) {
-            // special case: full page records with no bitmap. Checks if two
-            // records + bitmap is larger than the effective page size
-            return 1;
+        if (recordCache != null){
+            recordCache.clear();
         }
-        // +1 for space in bitmap
-        int recordOverheadInBits = 1 + 8 * schema.getSizeInBytes();
-        int pageSizeInBits = pageSize  * 8;
-        return pageSizeInBits / recordOverheadInBits;
     }
 
     /**
-     * bit: 0 means free. 1 means occupied
+     * Frees the partition of the page directory with all the records of the table and the
+     * overflow pages of their large values. The table cannot be used afterwards.
      * */
-    private byte[] getBitMap(Page page) {
-        if (bitmapSizeInBytes > 0){
-            byte[] bitMap = new byte[bitmapSizeInBytes];
-            page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE).get(bitMap);
-            return bitMap;
-        }else{
-            return new byte[0xFF];
+    public void drop(){
+        pgDir.drop();
+    }
+
+    /**
+     * Add a record into the first free slot of the first free
+     * page (if one exists, otherwise one is allocated).
+     *
+     * Records can be added by concurrent threads: the slot is claimed with the page
+     * latched, and each thread keeps inserting into its own page while it has space.
+     * **/
+    public RecordId addRecord(Record record){
+        record = encode(record);
+        short requiredSpace = layout.getRequiredSpace(record);
+        while (true){
+            Page page = this.pgDir.fetchPageWithSpace(requiredSpace);
+            page.latch();
+            try{
+                int slot = layout.insertRecord(page, record);
+                // report the exact free space, which the page directory cannot tell from the layout
+                this.pgDir.updateFreeSpace(page, layout.getFreeSpace(page));
+                if (slot >= 0){
+                    if (zoneMap != null){
+                        zoneMap.add(page.getPageNum(), record);
+                    }
+                    return new RecordId(page.getPageNum(), (short)slot);
+                }
+            }finally {
+                page.unlatch();
+                page.unpin();
+            }
+        }
+    }
+
+    /**
+     * Add records in bulk. Each data page is filled with as many records as it takes
+     * before its free space is updated once.
+     *
+     * @return record ids of the added records, in the order of the records.
+     * **/
+    public List<RecordId> addRecords(Iterator<Record> records){
+        List<RecordId> rids = new ArrayList<>();
+        records = encodeAll(records);
+        // records taken from the iterator since the first record of the current page
+        List<Record> taken = new ArrayList<>();
+        if (zoneMap != null){
+            records = taking(records, taken);
+        }
+        Record next = records.hasNext() ? records.next() : null;
+        while (next != null){
+            Page page = this.pgDir.fetchPageWithSpace(layout.getRequiredSpace(next));
+            page.latch();
+            try{
+                int numRids = rids.size();
+                next = layout.fillPage(page, next, records, rids);
+                this.pgDir.updateFreeSpace(page, layout.getFreeSpace(page));
+                if (zoneMap != null){
+                    // the records added to the page come first, next (if any) is the last one taken
+                    for (int i = 0; i < rids.size() - numRids; i++){
+                        zoneMap.add(page.getPageNum(), taken.get(i));
+                    }
+                    taken.subList(0, taken.size() - (next == null ? 0 : 1)).clear();
+                }
+            }finally {
+                page.unlatch();
+                page.unpin();
+            }
         }
+        return rids;
     }
 
-    private void writeBitMap(Page page, byte[] bitmap) {
-        page.pin();
+    /**
+     * Cache up to capacity decoded records for getRecord, evicting the least recently
+     * used ones. Cached records are invalidated when they are updated or deleted.
+     * */
+    public void enableRecordCache(int capacity){
+        this.recordCache = new RecordCache(capacity);
+    }
+
+    /**
+     * Store the values of the given LONG columns out of line. Such a column holds a pointer
+     * to a chain of overflow pages in the partition of the table, written with
+     * getOverflowStore(), or DiskSpaceManager.INVALID_PAGE_NUM for no value. Scans only read
+     * the pointers.
+     *
+     * The table owns the chains: the chain of a value is freed when its record is deleted or
+     * its pointer is replaced by an update, so pointers in the old versions of records
+     * returned by deleteRecord and updateRecord cannot be read.
+     * */
+    public void enableOverflow(List<String> columnNames){
+        int[] columns = new int[columnNames.size()];
+        for (int i = 0; i < columns.length; i++){
+            columns[i] = schema.findField(columnNames.get(i));
+            if (schema.getFieldType(columns[i]).getTypeId() != TypeId.LONG){
+                throw new IllegalArgumentException("Only long columns can hold overflow pointers: " + columnNames.get(i));
+            }
+        }
+        this.overflowStore = new OverflowStore(pgDir.getBufferManager(), pgDir.getPartNum());
+        this.overflowColumns = columns;
+    }
+
+    /**
+     * @return store of the large values of this table, or null if overflow is not enabled.
+     * */
+    public OverflowStore getOverflowStore(){
+        return overflowStore;
+    }
+
+    /**
+     * @return stream reading the large value of the record in the given column.
+     * @throws DatabaseException if the record has no value in the column.
+     * */
+    public InputStream openValue(RecordId rid, String columnName){
+        if (overflowStore == null){
+            throw new IllegalStateException("Overflow is not enabled for table " + name);
+        }
+        return overflowStore.open(readField(rid, schema.findField(columnName)).getLong());
+    }
+
+    public Record getRecord(RecordId rid){
+        long version = 0;
+        if (recordCache != null){
+            Record cached = recordCache.get(rid);
+            if (cached != null){
+                return cached;
+            }
+            version = recordCache.getVersion(rid);
+        }
+        Page page = pgDir.fetchPage(rid.getPageNum());
         try{
-            page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE).put(bitmap);
+            Record record = decode(layout.getRecord(page, rid.getEntryNum()));
+            if (recordCache != null){
+                recordCache.put(rid, record, version);
+            }
+            return record;
         }finally {
             page.unpin();
         }
     }
 
-    private void insertRecord(Record record, int index, Page page){
-        int offset = PageDirectory.DATA_HEADER_SIZE + bitmapSizeInBytes + index * schema.getSizeInBytes();
-        page.getBuffer().position(offset).put(record.toBytes(schema));
+    /**
+     * Decode a single field of a record, without decoding the rest of the record.
+     *
+     * @throws DatabaseException if there is no such record.
+     * */
+    public DataBox readField(RecordId rid, int column){
+        Page page = pgDir.fetchPage(rid.getPageNum());
+        try{
+            DataBox value = layout.readField(page, rid.getEntryNum(), column);
+            if (dictionary != null && dictionary.isEncoded(column)){
+                return dictionary.decode(column, value.getInt());
+            }
+            return value;
+        }finally {
+            page.unpin();
+        }
     }
 
     /**
-     * Add a record into the first free slot of the first free
-     * page (if one exists, otherwise one is allocated).
+     * Overwrite the record in place: its record id does not change.
      *
+     * @return the previous version of the record.
+     * @throws DatabaseException if there is no such record, or if the new version
+     * does not fit in the page of the record.
      * **/
-    public RecordId addRecord(Record record){
-        // TODO
-        short sizeInBytes = (short)schema.getSizeInBytes();
-        Page page = this.pgDir.fetchPageWithSpace(sizeInBytes);
+    public Record updateRecord(RecordId rid, Record record){
+        Page page = pgDir.fetchPage(rid.getPageNum());
+        page.latch();
         try{
-            byte[] bitMap = getBitMap(page);
-            int index = Bits.indexOfFirstZeroBit(bitMap);
-            insertRecord(record, index, page);
-            Bits.setBit(bitMap, index, Bits.Bit.ONE);
-            writeBitMap(page, bitMap);
-            return new RecordId(page.getPageNum(), (short)index);
+            Record old = decode(layout.getRecord(page, rid.getEntryNum()));
+            updateInPage(page, rid.getEntryNum(), encode(record));
+            this.pgDir.updateFreeSpace(page, layout.getFreeSpace(page));
+            return old;
         }finally {
+            page.unlatch();
             page.unpin();
         }
     }
 
-    public Record getRecord(RecordId rid){
+    /**
+     * Update records in bulk: the records of a page are updated with a single pin of the
+     * page, and its free space is updated once.
+     *
+     * @param update computes the new version of a record from the current one.
+     * **/
+    public void updateRecords(List<RecordId> rids, UnaryOperator<Record> update){
+        forEachPage(rids, (page, slots) -> {
+            for (int slot : slots){
+                updateInPage(page, slot, encode(update.apply(decode(layout.getRecord(page, slot)))));
+            }
+            this.pgDir.updateFreeSpace(page, layout.getFreeSpace(page));
+        });
+    }
+
+    /**
+     * Update the records matching cond, visiting each data page once.
+     *
+     * @return number of updated records.
+     * **/
+    public int updateRecordsWhere(Predicate<Record> cond, UnaryOperator<Record> update){
+        int numUpdated = 0;
+        for (long pageNum : pgDir.getDataPageNums()){
+            Page page = pgDir.fetchPage(pageNum);
+            page.latch();
+            try{
+                int[] slots = layout.getLiveSlots(page);
+                List<Record> records = decodeAll(layout.getRecords(page), null);
+                boolean updated = false;
+                for (int i = 0; i < slots.length; i++){
+                    if (cond.test(records.get(i))){
+                        updateInPage(page, slots[i], encode(update.apply(records.get(i))));
+                        updated = true;
+                        numUpdated++;
+                    }
+                }
+                if (updated){
+                    this.pgDir.updateFreeSpace(page, layout.getFreeSpace(page));
+                }
+            }finally {
+                page.unlatch();
+                page.unpin();
+            }
+        }
+        return numUpdated;
+    }
+
+    /**
+     * @return the record as stored in the data pages.
+     * */
+    private Record encode(Record record){
+        return dictionary == null ? record : dictionary.encode(record);
+    }
+
+    private Iterator<Record> encodeAll(Iterator<Record> records){
+        if (dictionary == null){
+            return records;
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public Record next() {
+                return encode(records.next());
+            }
+        };
+    }
+
+    private static Iterator<Record> taking(Iterator<Record> records, List<Record> taken){
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public Record next() {
+                Record record = records.next();
+                taken.add(record);
+                return record;
+            }
+        };
+    }
+
+    private Record decode(Record stored){
+        return dictionary == null ? stored : dictionary.decode(stored, null);
+    }
+
+    /**
+     * @param columns columns of the table held by the stored records, or null for all of them.
+     * */
+    private List<Record> decodeAll(List<Record> stored, int[] columns){
+        if (dictionary == null){
+            return stored;
+        }
+        List<Record> records = new ArrayList<>(stored.size());
+        for (Record record : stored){
+            records.add(dictionary.decode(record, columns));
+        }
+        return records;
+    }
+
+    private void updateInPage(Page page, int slot, Record record){
+        long[] pointers = readPointers(page, new int[]{slot});
+        if (!layout.updateRecord(page, slot, record)){
+            throw new DatabaseException(String.format(
+                    "Updated record does not fit in page %d", page.getPageNum()));
+        }
+        if (pointers != null){
+            // chains whose pointer is kept by the new version stay
+            for (int i = 0; i < overflowColumns.length; i++){
+                if (pointers[i] == record.getLong(overflowColumns[i])){
+                    pointers[i] = DiskSpaceManager.INVALID_PAGE_NUM;
+                }
+            }
+            freePointers(pointers);
+        }
+        if (zoneMap != null){
+            zoneMap.add(page.getPageNum(), record);
+        }
+        if (recordCache != null){
+            recordCache.invalidate(new RecordId(page.getPageNum(), (short)slot));
+        }
+    }
+
+    /**
+     * @return the deleted record.
+     * @throws DatabaseException if there is no such record.
+     * **/
+    public Record deleteRecord(RecordId rid){
         Page page = pgDir.fetchPage(rid.getPageNum());
+        page.latch();
         try{
-            byte[] bitMap = getBitMap(page);
-            if (Bits.getBit(bitMap, rid.getEntryNum())== Bits.Bit.ZERO){
-                throw new DatabaseException("");
-            }
-            int offset = PageDirectory.DATA_HEADER_SIZE + bitmapSizeInBytes + rid.getEntryNum() * schema.getSizeInBytes();
-            Buffer buf = page.getBuffer().position(offset);
-            return Record.fromBytes(buf, schema);
+            Record old = decode(layout.getRecord(page, rid.getEntryNum()));
+            deleteInPage(page, new int[]{rid.getEntryNum()});
+            return old;
         }finally {
+            page.unlatch();
             page.unpin();
         }
     }
 
-    public Record updateRecord(RecordId rid, Record record){
-        // TODO
-        return null;
+    /**
+     * Delete records in bulk: the records of a page are deleted with a single pin of the
+     * page and a single update of its slot bookkeeping and free space.
+     * **/
+    public void deleteRecords(List<RecordId> rids){
+        forEachPage(rids, this::deleteInPage);
     }
 
-    public Record deleteRecord(RecordId rid){
-        // TODO
-        return null;
+    /**
+     * Delete the records matching cond, visiting each data page once.
+     *
+     * @return number of deleted records.
+     * **/
+    public int deleteRecordsWhere(Predicate<Record> cond){
+        int numDeleted = 0;
+        for (long pageNum : pgDir.getDataPageNums()){
+            Page page = pgDir.fetchPage(pageNum);
+            page.latch();
+            try{
+                int[] slots = layout.getLiveSlots(page);
+                List<Record> records = decodeAll(layout.getRecords(page), null);
+                int[] deleted = new int[slots.length];
+                int numDeletedInPage = 0;
+                for (int i = 0; i < slots.length; i++){
+                    if (cond.test(records.get(i))){
+                        deleted[numDeletedInPage++] = slots[i];
+                    }
+                }
+                if (numDeletedInPage > 0){
+                    deleteInPage(page, Arrays.copyOf(deleted, numDeletedInPage));
+                    numDeleted += numDeletedInPage;
+                }
+            }finally {
+                page.unlatch();
+                page.unpin();
+            }
+        }
+        return numDeleted;
     }
 
+    /**
+     * Delete records of a pinned page, and give the page back to the page directory
+     * if it has no record left. The page directory keeps it while it is handed out to
+     * an inserter.
+     * */
+    private void deleteInPage(Page page, int[] slots){
+        long[] pointers = readPointers(page, slots);
+        int numLeft = layout.deleteRecords(page, slots);
+        if (pointers != null){
+            freePointers(pointers);
+        }
+        if (recordCache != null){
+            for (int slot : slots){
+                recordCache.invalidate(new RecordId(page.getPageNum(), (short)slot));
+            }
+        }
+        if (numLeft == 0 && zoneMap != null){
+            zoneMap.remove(page.getPageNum());
+        }
+        this.pgDir.updateFreeSpace(page, numLeft == 0 ? pgDir.getEffectivePageSize() : layout.getFreeSpace(page));
+    }
 
     /**
-     * Iterate through the data pages of this table
+     * @return overflow pointers of the records of the slots, column by column for each
+     * record, or null if overflow is not enabled.
+     * */
+    private long[] readPointers(Page page, int[] slots){
+        if (overflowColumns == null){
+            return null;
+        }
+        long[] pointers = new long[slots.length * overflowColumns.length];
+        for (int i = 0; i < slots.length; i++){
+            for (int j = 0; j < overflowColumns.length; j++){
+                pointers[i * overflowColumns.length + j] = layout.readField(page, slots[i], overflowColumns[j]).getLong();
+            }
+        }
+        return pointers;
+    }
+
+    private void freePointers(long[] pointers){
+        for (long pointer : pointers){
+            if (pointer != DiskSpaceManager.INVALID_PAGE_NUM){
+                overflowStore.free(pointer);
+            }
+        }
+    }
+
+    /**
+     * Group record ids by page, and call action once per page with the page pinned
+     * and the slots of its records.
+     * */
+    private void forEachPage(List<RecordId> rids, BiConsumer<Page, int[]> action){
+        List<RecordId> sorted = new ArrayList<>(rids);
+        Collections.sort(sorted);
+        int start = 0;
+        while (start < sorted.size()){
+            long pageNum = sorted.get(start).getPageNum();
+            int end = start;
+            while (end < sorted.size() && sorted.get(end).getPageNum() == pageNum){
+                end++;
+            }
+            int[] slots = new int[end - start];
+            for (int i = start; i < end; i++){
+                slots[i - start] = sorted.get(i).getEntryNum();
+            }
+            Page page = pgDir.fetchPage(pageNum);
+            page.latch();
+            try{
+                action.accept(page, slots);
+            }finally {
+                page.unlatch();
+                page.unpin();
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Sequential scan over all the records of this table, page by page.
+     * Each data page is pinned once, and its records are read with a
+     * single read and decoded in one pass.
      * */
     @Override
     public BacktrackingIterator<Record> iterator() {
-        return null;
+        return new ConcatBacktrackingIterator<>(new ScanPageIterator(null, null));
+    }
+
+    /**
+     * Sequential scan over the records whose field columnName equals value. For a
+     * dictionary encoded column the value is looked up once, and rows are filtered on
+     * their codes before being decoded.
+     * */
+    public BacktrackingIterator<Record> scanEquals(String columnName, DataBox value) {
+        int column = schema.findField(columnName);
+        Predicate<Record> filter;
+        if (dictionary != null && dictionary.isEncoded(column)){
+            // -1 if the value is in no row: matches nothing
+            int code = dictionary.lookup(column, value.getString());
+            filter = stored -> stored.getInt(column) == code;
+        }else{
+            filter = stored -> stored.getValue(column).equals(value);
+        }
+        return new ConcatBacktrackingIterator<>(new ScanPageIterator(null, filter));
+    }
+
+    /**
+     * Keep the min/max of the given columns for each data page, so that scanRange can
+     * skip pages. The ranges of the existing pages are computed with a scan of the table,
+     * then maintained by inserts and updates.
+     * */
+    public void createZoneMap(List<String> columnNames){
+        int[] columns = new int[columnNames.size()];
+        for (int i = 0; i < columns.length; i++){
+            columns[i] = schema.findField(columnNames.get(i));
+            if (dictionary != null && dictionary.isEncoded(columns[i])){
+                throw new IllegalArgumentException("Dictionary encoded columns cannot be zone mapped: " + columnNames.get(i));
+            }
+        }
+        ZoneMap zoneMap = new ZoneMap(columns);
+        for (long pageNum : pgDir.getDataPageNums()){
+            Page page = pgDir.fetchPage(pageNum);
+            try{
+                for (Record stored : layout.getRecords(page)){
+                    zoneMap.add(pageNum, stored);
+                }
+            }finally {
+                page.unpin();
+            }
+        }
+        this.zoneMap = zoneMap;
+    }
+
+    /**
+     * Sequential scan over the records whose field columnName satisfies "field op value".
+     * If the column is zone mapped, the pages whose range cannot match are not fetched.
+     * */
+    public BacktrackingIterator<Record> scanRange(String columnName, PredicateOperator op, DataBox value){
+        int column = schema.findField(columnName);
+        Predicate<Record> filter;
+        if (dictionary != null && dictionary.isEncoded(column)){
+            filter = stored -> ZoneMap.evaluate(op, dictionary.decode(column, stored.getInt(column)), value);
+        }else{
+            filter = stored -> ZoneMap.evaluate(op, stored.getValue(column), value);
+        }
+        int index = zoneMap == null ? -1 : zoneMap.indexOf(column);
+        if (index < 0){
+            return new ConcatBacktrackingIterator<>(new ScanPageIterator(null, filter));
+        }
+        List<Long> pageNums = new ArrayList<>();
+        for (long pageNum : pgDir.getDataPageNums()){
+            if (zoneMap.mayMatch(pageNum, index, op, value)){
+                pageNums.add(pageNum);
+            }
+        }
+        return new ConcatBacktrackingIterator<>(new ScanPageIterator(pageNums, null, filter));
+    }
+
+    /**
+     * Sequential scan over all the records of this table, holding only the given
+     * columns in the given order. With the PAX format only those columns are read
+     * from each page.
+     * */
+    public BacktrackingIterator<Record> projectedIterator(List<String> columnNames) {
+        int[] columns = new int[columnNames.size()];
+        for (int i = 0; i < columns.length; i++){
+            columns[i] = schema.findField(columnNames.get(i));
+        }
+        return new ConcatBacktrackingIterator<>(new ScanPageIterator(columns, null));
+    }
+
+    /**
+     * Sequential scan over all the records of this table, in batches of up to capacity
+     * rows stored column by column. The layout copies the fields of the records of each
+     * data page straight from the page into the columns (see PageLayout.fillBatch), so
+     * that fixed-width records are not decoded into values one by one. A page is pinned
+     * again if a batch fills up before its last record.
+     * */
+    public Iterator<RecordBatch> batchIterator(int capacity) {
+        if (dictionary != null){
+            // encoded columns are decoded record by record
+            return RecordBatch.batches(iterator(), schema, capacity);
+        }
+        long[] pageNums = pgDir.getDataPageNums();
+        return new Iterator<>() {
+            private int index = 0;
+            // slot of the page at index - 1 to resume from, -1 once the page is done
+            private int slot = -1;
+            private RecordBatch batch;
+
+            @Override
+            public boolean hasNext() {
+                if (batch == null){
+                    RecordBatch next = new RecordBatch(schema, capacity);
+                    while (!next.isFull() && (slot >= 0 || index < pageNums.length)) {
+                        Page page = pgDir.fetchPage(pageNums[slot >= 0 ? index - 1 : index++]);
+                        try {
+                            slot = layout.fillBatch(page, Math.max(slot, 0), next);
+                        } finally {
+                            page.unpin();
+                        }
+                    }
+                    batch = next.getNumRows() > 0 ? next : null;
+                }
+                return batch != null;
+            }
+
+            @Override
+            public RecordBatch next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RecordBatch next = batch;
+                batch = null;
+                return next;
+            }
+        };
+    }
+
+    public Iterator<RecordBatch> batchIterator() {
+        return batchIterator(RecordBatch.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Splits the scan into ranges of data pages. Each range pins and decodes its
+     * own pages, so that ranges can be consumed by different threads.
+     * */
+    @Override
+    public Spliterator<Record> spliterator() {
+        long[] pageNums = pgDir.getDataPageNums();
+        return new PageRangeSpliterator(pageNums, 0, pageNums.length, null);
+    }
+
+    public Stream<Record> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Run query over a parallel scan of this table, with degree fork-join workers.
+     * For example, counting the records of a table with 4 workers:
+     *
+     *   long count = table.parallelScan(4, Stream::count);
+     * */
+    public <T> T parallelScan(int degree, Function<Stream<Record>, T> query) {
+        ForkJoinPool pool = new ForkJoinPool(degree);
+        try {
+            return pool.submit(() -> query.apply(parallelStream())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new DatabaseException(e);
+        } finally {
+            pool.shutdown();
+        }
     }
 
     public BacktrackingIterator<Page> pageIterator() {
@@ -170,26 +752,25 @@ public class Table implements BacktrackingIterable<Record> {
      * */
     class RIDPageIterator extends IndexBacktrackingIterator<RecordId> {
         private Page page;
-        private byte[] bitMap;
+        private int[] slots;
         public RIDPageIterator(Page page) {
-            super(numRecordsPerPage);
+            this(page, layout.getLiveSlots(page));
+        }
+
+        private RIDPageIterator(Page page, int[] slots) {
+            super(slots.length);
             this.page = page;
-            this.bitMap = getBitMap(page);
+            this.slots = slots;
         }
 
         @Override
         protected int getNextNonEmpty(int currentIndex) {
-            for (int i = currentIndex + 1; i < numRecordsPerPage; i++){
-                if (Bits.getBit(bitMap, i) == Bits.Bit.ONE){
-                    return i;
-                }
-            }
-            return numRecordsPerPage;
+            return currentIndex + 1;
         }
 
         @Override
         protected RecordId getValue(int index) {
-            return new RecordId(page.getPageNum(), (short)index);
+            return new RecordId(page.getPageNum(), (short)slots[index]);
         }
     }
 
@@ -236,7 +817,7 @@ public class Table implements BacktrackingIterable<Record> {
         private class InnerIterable implements BacktrackingIterable<RecordId> {
             private Page page;
             public  InnerIterable(Page page){
-
+                this.page = page;
             }
             @Override
             public BacktrackingIterator<RecordId> iterator() {
@@ -245,6 +826,174 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
+    /**
+     * Iterator over all the data pages of this table, each page being an iterable
+     * of its records. Records hold all the fields if columns is null, and only
+     * the stored records matching filter are returned if filter is not null.
+     * */
+    private class ScanPageIterator implements BacktrackingIterator<BacktrackingIterable<Record>> {
+        // either pages of the page directory, or page numbers of the pages to scan
+        private final BacktrackingIterator<Page> sourceIterator;
+        private final BacktrackingIterator<Long> pageNumIterator;
+        private final int[] columns;
+        private final Predicate<Record> filter;
+
+        public ScanPageIterator(int[] columns, Predicate<Record> filter){
+            this.sourceIterator = pgDir.iterator();
+            this.pageNumIterator = null;
+            this.columns = columns;
+            this.filter = filter;
+        }
+
+        /**
+         * Iterator over the given data pages only, fetched when their records are read.
+         * */
+        public ScanPageIterator(List<Long> pageNums, int[] columns, Predicate<Record> filter){
+            this.sourceIterator = null;
+            this.pageNumIterator = new ArrayBacktrackingIterator<>(pageNums);
+            this.columns = columns;
+            this.filter = filter;
+        }
+
+        private BacktrackingIterator<?> source() {
+            return sourceIterator != null ? sourceIterator : pageNumIterator;
+        }
+
+        @Override
+        public void markPrev() {
+            source().markPrev();
+        }
+
+        @Override
+        public void markNext() {
+            source().markNext();
+        }
+
+        @Override
+        public void reset() {
+            source().reset();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return source().hasNext();
+        }
+
+        @Override
+        public BacktrackingIterable<Record> next() {
+            if (sourceIterator != null){
+                return new ScanPage(sourceIterator.next(), columns, filter);
+            }
+            return new ScanPage(pageNumIterator.next(), columns, filter);
+        }
+    }
+
+    /**
+     * Records of a single data page. The page comes pinned from the page directory,
+     * and is decoded and unpinned by the first iterator. Iterators created after a
+     * reset fetch the page again.
+     * */
+    private class ScanPage implements BacktrackingIterable<Record> {
+        private final long pageNum;
+        private final int[] columns;
+        private final Predicate<Record> filter;
+        private Page page;
+
+        public ScanPage(Page page, int[] columns, Predicate<Record> filter){
+            this.pageNum = page.getPageNum();
+            this.columns = columns;
+            this.filter = filter;
+            this.page = page;
+        }
+
+        public ScanPage(long pageNum, int[] columns, Predicate<Record> filter){
+            this.pageNum = pageNum;
+            this.columns = columns;
+            this.filter = filter;
+        }
+
+        @Override
+        public BacktrackingIterator<Record> iterator() {
+            Page page = this.page != null ? this.page : pgDir.fetchPage(pageNum);
+            this.page = null;
+            try{
+                List<Record> records;
+                if (filter == null){
+                    records = columns == null ? layout.getRecords(page) : layout.getRecords(page, columns);
+                }else{
+                    records = new ArrayList<>();
+                    for (Record stored : layout.getRecords(page)){
+                        if (filter.test(stored)){
+                            records.add(columns == null ? stored : stored.project(columns));
+                        }
+                    }
+                }
+                return new ArrayBacktrackingIterator<>(decodeAll(records, columns));
+            }finally {
+                page.unpin();
+            }
+        }
+    }
+
+    /**
+     * Records of the data pages in [index, end) of a snapshot of the page directory.
+     * A split hands the first half of the remaining pages to a new spliterator, along
+     * with the records left from the current page so that the order is kept.
+     * */
+    private class PageRangeSpliterator implements Spliterator<Record> {
+        private final long[] pageNums;
+        private int index;
+        private final int end;
+        // records of the last decoded page not yet consumed
+        private Iterator<Record> current;
+
+        private PageRangeSpliterator(long[] pageNums, int index, int end, Iterator<Record> current) {
+            this.pageNums = pageNums;
+            this.index = index;
+            this.end = end;
+            this.current = current;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Record> action) {
+            while (current == null || !current.hasNext()) {
+                if (index >= end) {
+                    return false;
+                }
+                Page page = pgDir.fetchPage(pageNums[index++]);
+                try {
+                    current = decodeAll(layout.getRecords(page), null).iterator();
+                } finally {
+                    page.unpin();
+                }
+            }
+            action.accept(current.next());
+            return true;
+        }
+
+        @Override
+        public Spliterator<Record> trySplit() {
+            if (end - index < 2) {
+                return null;
+            }
+            int mid = (index + end) >>> 1;
+            Spliterator<Record> prefix = new PageRangeSpliterator(pageNums, index, mid, current);
+            this.index = mid;
+            this.current = null;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return (long) (end - index) * layout.getMaxRecordsPerPage();
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
     /**
      * Wraps the RIDPageIterator and PageIterator to form an iterator
      * over all the records of this table.
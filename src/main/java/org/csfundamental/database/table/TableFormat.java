@@ -0,0 +1,29 @@
+package org.csfundamental.database.table;
+
+/**
+ * On-page format of the records of a table.
+ * */
+public enum TableFormat {
+    /**
+     * Fixed-width records sized by Schema.getSizeInBytes(), with a bitmap of used slots.
+     * */
+    FIXED,
+    /**
+     * Variable-length records with a slot directory: strings only take their actual length.
+     * */
+    SLOTTED,
+    /**
+     * Fixed-width records stored column by column within each page (PAX), so that
+     * scans decode only the columns they project.
+     * */
+    PAX;
+
+    PageLayout createLayout(Schema schema, int pageSize) {
+        switch (this) {
+            case FIXED: return new FixedPageLayout(schema, pageSize);
+            case SLOTTED: return new SlottedPageLayout(schema, pageSize);
+            case PAX: return new PaxPageLayout(schema, pageSize);
+            default: throw new IllegalArgumentException("Unreachable code.");
+        }
+    }
+}
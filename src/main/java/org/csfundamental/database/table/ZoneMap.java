@@ -0,0 +1,129 @@
+package org.csfundamental.database.table;
+
+import org.csfundamental.database.common.PredicateOperator;
+import org.csfundamental.database.table.databox.DataBox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory min/max of some columns for each data page of a table, so that scans with a
+ * range predicate can skip the pages whose ranges cannot match without fetching them.
+ *
+ * Ranges only widen: inserts and updates extend the range of their page, and deletes leave
+ * it as is, so a range may be wider than the values of its page but never narrower. The
+ * range of a page is dropped when the page is freed. A page without a range is never
+ * skipped.
+ *
+ * Ranges are kept on the records as stored, so dictionary encoded columns cannot be
+ * zone mapped.
+ * */
+class ZoneMap {
+    // columns of the table with a range
+    private final int[] columns;
+    // for each page, min and max of each of the columns, in the order of columns
+    private final Map<Long, DataBox[][]> zones;
+
+    ZoneMap(int[] columns) {
+        this.columns = columns;
+        this.zones = new HashMap<>();
+    }
+
+    /**
+     * @return index of column in the columns with a range, or -1.
+     * */
+    int indexOf(int column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] == column) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Widen the ranges of the page to hold the values of the record.
+     * */
+    synchronized void add(long pageNum, Record stored) {
+        DataBox[][] zone = zones.get(pageNum);
+        if (zone == null) {
+            zone = new DataBox[2][columns.length];
+            zones.put(pageNum, zone);
+        }
+        for (int i = 0; i < columns.length; i++) {
+            DataBox value = stored.getValue(columns[i]);
+            if (zone[0][i] == null || compare(value, zone[0][i]) < 0) {
+                zone[0][i] = value;
+            }
+            if (zone[1][i] == null || compare(value, zone[1][i]) > 0) {
+                zone[1][i] = value;
+            }
+        }
+    }
+
+    synchronized void remove(long pageNum) {
+        zones.remove(pageNum);
+    }
+
+    synchronized void clear() {
+        zones.clear();
+    }
+
+    /**
+     * @param index index of the column in the columns with a range, see indexOf.
+     * @return false if no value of the page can satisfy "value op operand".
+     * */
+    synchronized boolean mayMatch(long pageNum, int index, PredicateOperator op, DataBox operand) {
+        DataBox[][] zone = zones.get(pageNum);
+        if (zone == null) {
+            return true;
+        }
+        DataBox min = zone[0][index];
+        DataBox max = zone[1][index];
+        switch (op) {
+            case EQUALS: return compare(min, operand) <= 0 && compare(max, operand) >= 0;
+            case NOT_EQUALS: return compare(min, operand) != 0 || compare(max, operand) != 0;
+            case LESS_THAN: return compare(min, operand) < 0;
+            case LESS_THAN_EQUALS: return compare(min, operand) <= 0;
+            case GREATER_THAN: return compare(max, operand) > 0;
+            case GREATER_THAN_EQUALS: return compare(max, operand) >= 0;
+            default: throw new IllegalArgumentException("Unreachable code.");
+        }
+    }
+
+    /**
+     * @return whether "a op b" holds.
+     * */
+    static boolean evaluate(PredicateOperator op, DataBox a, DataBox b) {
+        int cmp = compare(a, b);
+        switch (op) {
+            case EQUALS: return cmp == 0;
+            case NOT_EQUALS: return cmp != 0;
+            case LESS_THAN: return cmp < 0;
+            case LESS_THAN_EQUALS: return cmp <= 0;
+            case GREATER_THAN: return cmp > 0;
+            case GREATER_THAN_EQUALS: return cmp >= 0;
+            default: throw new IllegalArgumentException("Unreachable code.");
+        }
+    }
+
+    /**
+     * Compare two values of the same type.
+     * */
+    static int compare(DataBox a, DataBox b) {
+        if (a.getTypeId() != b.getTypeId()) {
+            throw new IllegalArgumentException(String.format(
+                    "Cannot compare %s with %s", a.getTypeId(), b.getTypeId()));
+        }
+        switch (a.getTypeId()) {
+            case BOOL: return Boolean.compare(a.getBool(), b.getBool());
+            case INT: return Integer.compare(a.getInt(), b.getInt());
+            case LONG: return Long.compare(a.getLong(), b.getLong());
+            case FLOAT: return Float.compare(a.getFloat(), b.getFloat());
+            case STRING: return a.getString().compareTo(b.getString());
+            case BYTE_ARRAY: return Arrays.compare(a.getByteArray(), b.getByteArray());
+            default: throw new IllegalArgumentException("Unhandled TypeId " + a.getTypeId());
+        }
+    }
+}
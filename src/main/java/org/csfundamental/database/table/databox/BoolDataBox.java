@@ -1,5 +1,7 @@
 package org.csfundamental.database.table.databox;
 
+import org.csfundamental.database.common.Buffer;
+
 import java.nio.ByteBuffer;
 
 public class BoolDataBox extends DataBox{
@@ -19,6 +21,11 @@ public class BoolDataBox extends DataBox{
         return TypeId.BOOL;
     }
 
+    @Override
+    public boolean getBool() {
+        return value;
+    }
+
     @Override
     public byte[] toBytes() {
         ByteBuffer buf = ByteBuffer.allocate(type().getSizeInBytes());
@@ -26,6 +33,11 @@ public class BoolDataBox extends DataBox{
         return buf.array();
     }
 
+    @Override
+    public void writeTo(Buffer dst) {
+        dst.put((byte)(value ? 1 : 0));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
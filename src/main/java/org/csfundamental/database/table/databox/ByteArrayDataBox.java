@@ -1,5 +1,7 @@
 package org.csfundamental.database.table.databox;
 
+import org.csfundamental.database.common.Buffer;
+
 import java.util.Arrays;
 
 public class ByteArrayDataBox extends DataBox{
@@ -24,11 +26,21 @@ public class ByteArrayDataBox extends DataBox{
         return TypeId.BYTE_ARRAY;
     }
 
+    @Override
+    public byte[] getByteArray() {
+        return values;
+    }
+
     @Override
     public byte[] toBytes() {
         return values;
     }
 
+    @Override
+    public void writeTo(Buffer dst) {
+        dst.put(values);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -57,6 +57,29 @@ public abstract class DataBox {
 
     public abstract byte[] toBytes();
 
+    /**
+     * Write the fixed-width encoding of this value (the bytes of toBytes) at the
+     * position of dst, without intermediate arrays.
+     */
+    public void writeTo(Buffer dst) {
+        dst.put(toBytes());
+    }
+
+    /**
+     * Write the variable-length encoding of this value (see Record.toVarBytes) at the
+     * position of dst. Only strings differ from the fixed-width encoding.
+     */
+    public void writeVarTo(Buffer dst) {
+        writeTo(dst);
+    }
+
+    /**
+     * @return size in bytes of the variable-length encoding of this value.
+     */
+    public int getVarSizeInBytes() {
+        return type().getSizeInBytes();
+    }
+
     public static DataBox fromString(Type type, String s) {
         String raw = s;
         s = s.toLowerCase().trim();
@@ -1,5 +1,7 @@
 package org.csfundamental.database.table.databox;
 
+import org.csfundamental.database.common.Buffer;
+
 import java.nio.ByteBuffer;
 
 public class FloatDataBox extends DataBox{
@@ -11,7 +13,7 @@ public class FloatDataBox extends DataBox{
 
     @Override
     public Type type() {
-        return Type.fromInt();
+        return Type.fromFloat();
     }
 
     @Override
@@ -19,6 +21,11 @@ public class FloatDataBox extends DataBox{
         return TypeId.FLOAT;
     }
 
+    @Override
+    public float getFloat() {
+        return value;
+    }
+
     @Override
     public byte[] toBytes() {
         ByteBuffer buf = ByteBuffer.allocate(type().getSizeInBytes());
@@ -26,6 +33,11 @@ public class FloatDataBox extends DataBox{
         return buf.array();
     }
 
+    @Override
+    public void writeTo(Buffer dst) {
+        dst.putFloat(value);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
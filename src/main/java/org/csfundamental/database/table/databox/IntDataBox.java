@@ -1,5 +1,7 @@
 package org.csfundamental.database.table.databox;
 
+import org.csfundamental.database.common.Buffer;
+
 import java.nio.ByteBuffer;
 
 public class IntDataBox extends DataBox{
@@ -32,6 +34,11 @@ public class IntDataBox extends DataBox{
         return buf.array();
     }
 
+    @Override
+    public void writeTo(Buffer dst) {
+        dst.putInt(value);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == this) {
@@ -1,5 +1,7 @@
 package org.csfundamental.database.table.databox;
 
+import org.csfundamental.database.common.Buffer;
+
 import java.nio.ByteBuffer;
 
 public class LongDataBox extends DataBox{
@@ -19,6 +21,11 @@ public class LongDataBox extends DataBox{
         return TypeId.LONG;
     }
 
+    @Override
+    public long getLong() {
+        return value;
+    }
+
     @Override
     public byte[] toBytes() {
         ByteBuffer buf = ByteBuffer.allocate(type().getSizeInBytes());
@@ -26,6 +33,11 @@ public class LongDataBox extends DataBox{
         return buf.array();
     }
 
+    @Override
+    public void writeTo(Buffer dst) {
+        dst.putLong(value);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == this) {
@@ -1,10 +1,17 @@
 package org.csfundamental.database.table.databox;
 
+import org.csfundamental.database.common.Buffer;
+
 import java.nio.ByteBuffer;
 
 public class StringDataBox extends DataBox {
+    // zeros to pad strings with, by length, created on first use
+    private static final byte[][] PADDING = new byte[257][];
+
     private String value;
     private int size;
+    // encoded value, created on first use
+    private byte[] bytes;
 
     public StringDataBox(String value, int size){
         if (size <= 0) {
@@ -17,6 +24,19 @@ public class StringDataBox extends DataBox {
         }
         this.size = size;
         this.value = value.replaceAll("\0*$", ""); // Trim off null bytes
+        // a non-ASCII char may take several bytes once encoded: only then encode to check
+        if (!isAscii(this.value) && getBytes().length > size){
+            throw new IllegalArgumentException("length of encoded input string exceeds the limit");
+        }
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public StringDataBox(String str) {
@@ -33,17 +53,57 @@ public class StringDataBox extends DataBox {
         return TypeId.STRING;
     }
 
+    @Override
+    public String getString() {
+        return value;
+    }
+
+    private byte[] getBytes() {
+        if (bytes == null) {
+            bytes = value.getBytes();
+        }
+        return bytes;
+    }
+
+    private static byte[] padding(int length) {
+        if (length >= PADDING.length) {
+            return new byte[length];
+        }
+        if (PADDING[length] == null) {
+            PADDING[length] = new byte[length];
+        }
+        return PADDING[length];
+    }
+
     @Override
     public byte[] toBytes() {
         // padding
         ByteBuffer buf = ByteBuffer.allocate(size);
-        buf.put(value.getBytes());
-        while(buf.hasRemaining()){
-            buf.put((byte)0);
-        }
+        buf.put(getBytes());
         return buf.array();
     }
 
+    @Override
+    public void writeTo(Buffer dst) {
+        byte[] bytes = getBytes();
+        dst.put(bytes);
+        if (bytes.length < size) {
+            dst.put(padding(size - bytes.length));
+        }
+    }
+
+    @Override
+    public void writeVarTo(Buffer dst) {
+        byte[] bytes = getBytes();
+        dst.putShort((short) bytes.length);
+        dst.put(bytes);
+    }
+
+    @Override
+    public int getVarSizeInBytes() {
+        return Short.BYTES + getBytes().length;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -7,10 +7,19 @@ import org.csfundamental.database.storage.PageException;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.csfundamental.database.storage.DiskSpaceManager.PAGE_SIZE;
 import static org.junit.Assert.*;
@@ -18,6 +27,8 @@ import static org.junit.Assert.*;
 public class BufferManagerTest {
     private DiskSpaceManager diskSpaceManager;
     private BufferManager bufferManager;
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
 
     private byte[] generateRandomByteArray(){
         byte[] data = new byte[PAGE_SIZE];
@@ -276,6 +287,39 @@ public class BufferManagerTest {
         assertTrue(frame7.isValid());
     }
 
+    @Test
+    public void testFreePartDoesNotFlush() {
+        int partNum = diskSpaceManager.allocPart(1);
+        for (int i = 0; i < 3; i++) {
+            Page page = bufferManager.fetchNewPage(partNum);
+            page.getBuffer().putInt(i);
+            page.unpin();
+        }
+        long numIOs = bufferManager.getNumIOs();
+        bufferManager.freePart(partNum);
+        assertEquals(numIOs, bufferManager.getNumIOs());
+        assertEquals(0, bufferManager.getNumResidentPages());
+    }
+
+    @Test
+    public void testTruncatePartDoesNotFlush() {
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[3];
+        for (int i = 0; i < pageNums.length; i++) {
+            Page page = bufferManager.fetchNewPage(partNum);
+            page.getBuffer().putInt(i);
+            pageNums[i] = page.getPageNum();
+            page.unpin();
+        }
+        long numIOs = bufferManager.getNumIOs();
+        bufferManager.truncatePart(partNum);
+        assertEquals(numIOs, bufferManager.getNumIOs());
+        assertEquals(0, bufferManager.getNumResidentPages());
+        // the partition is empty, and can be used again
+        assertThrows(PageException.class, () -> bufferManager.fetchPage(pageNums[0]));
+        bufferManager.fetchNewPage(partNum).unpin();
+    }
+
     @Test(expected = PageException.class)
     public void testMissingPart() {
         bufferManager.fetchPageFrame(DiskSpaceManager.getVirtualPageNum(0, 0));
@@ -310,4 +354,248 @@ public class BufferManagerTest {
         Assert.assertEquals(ch, pageBuffer.getChar());
         Assert.assertEquals(f, pageBuffer.getFloat(), 0.000000000);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStats() {
+        int partNum1 = diskSpaceManager.allocPart(1);
+        int partNum2 = diskSpaceManager.allocPart(2);
+
+        BufferFrame frame1 = bufferManager.fetchNewPageFrame(partNum1);
+        frame1.writeBytes((short) 0, (short) 4, new byte[] {1, 2, 3, 4});
+        frame1.unpin();
+        bufferManager.fetchPageFrame(frame1.getPageNum()).unpin();
+        bufferManager.fetchPageFrame(frame1.getPageNum()).unpin();
+        for (int i = 0; i < 5; i++) {
+            bufferManager.fetchNewPageFrame(partNum2).unpin();
+        }
+
+        BufferPoolStats.Snapshot snapshot = bufferManager.getStats().snapshot();
+        BufferPoolStats.PartitionSnapshot part1 = snapshot.getPartition(partNum1);
+        BufferPoolStats.PartitionSnapshot part2 = snapshot.getPartition(partNum2);
+        assertEquals(2, part1.getHits());
+        assertEquals(1, part1.getMisses());
+        assertEquals(1, part1.getEvictions());
+        assertEquals(1, part1.getDirtyFlushes());
+        assertEquals(0, part2.getHits());
+        assertEquals(5, part2.getMisses());
+        assertEquals(0, part2.getEvictions());
+        assertEquals(2, snapshot.getHits());
+        assertEquals(6, snapshot.getMisses());
+        assertEquals(0.25, snapshot.getHitRatio(), 1e-9);
+        assertTrue(snapshot.getFetchNanos() > 0);
+
+        BufferPoolStats.Snapshot beforeReset = bufferManager.getStats().snapshotAndReset();
+        assertEquals(2, beforeReset.getHits());
+        BufferPoolStats.Snapshot afterReset = bufferManager.getStats().snapshot();
+        assertEquals(0, afterReset.getHits());
+        assertEquals(0, afterReset.getMisses());
+        assertEquals(0, afterReset.getEvictions());
+    }
+
+    @Test
+    public void testRegisterMBean() throws Exception {
+        int partNum = diskSpaceManager.allocPart(1);
+        bufferManager.registerMBean("testRegisterMBean");
+        bufferManager.fetchNewPageFrame(partNum).unpin();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.csfundamental.database:type=BufferPool,name=testRegisterMBean");
+        assertEquals(1L, server.getAttribute(name, "Misses"));
+        assertEquals(1, server.getAttribute(name, "NumResidentPages"));
+        assertEquals(5, server.getAttribute(name, "Capacity"));
+        server.invoke(name, "resetStats", null, null);
+        assertEquals(0L, server.getAttribute(name, "Misses"));
+
+        bufferManager.close();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testPinWaitTimeout() {
+        int partNum = diskSpaceManager.allocPart(1);
+        bufferManager.setPinWaitTimeout(50, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 5; i++) {
+            bufferManager.fetchNewPageFrame(partNum);
+        }
+
+        long start = System.nanoTime();
+        assertThrows(IllegalStateException.class, () -> bufferManager.fetchNewPageFrame(partNum));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        BufferPoolStats.Snapshot snapshot = bufferManager.getStats().snapshot();
+        assertEquals(1, snapshot.getFrameWaits());
+        assertEquals(1, snapshot.getFrameWaitTimeouts());
+        assertTrue(snapshot.getFrameWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testPinWaitUntilUnpin() throws Exception {
+        int partNum = diskSpaceManager.allocPart(1);
+        bufferManager.setPinWaitTimeout(10, TimeUnit.SECONDS);
+        BufferFrame[] frames = new BufferFrame[5];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = bufferManager.fetchNewPageFrame(partNum);
+        }
+        long pageNum = diskSpaceManager.allocPage(partNum);
+
+        CompletableFuture<BufferFrame> waiter = CompletableFuture.supplyAsync(() -> bufferManager.fetchPageFrame(pageNum));
+        Thread.sleep(100);
+        assertFalse(waiter.isDone());
+
+        frames[2].unpin();
+        BufferFrame frame = waiter.get(10, TimeUnit.SECONDS);
+        assertEquals(pageNum, frame.getPageNum());
+        assertFalse(frames[2].isValid());
+
+        frame.unpin();
+        for (int i = 0; i < frames.length; i++) {
+            if (i != 2) frames[i].unpin();
+        }
+        BufferPoolStats.Snapshot snapshot = bufferManager.getStats().snapshot();
+        assertEquals(1, snapshot.getFrameWaits());
+        assertEquals(0, snapshot.getFrameWaitTimeouts());
+    }
+
+    @Test
+    public void testPoolQuota() {
+        int indexPart = diskSpaceManager.allocPart(1);
+        int tempPart = diskSpaceManager.allocPart(2);
+        bufferManager.createPool("index", 2, 3);
+        bufferManager.createPool("temp", 0, 2);
+        bufferManager.assignPartition(indexPart, "index");
+        bufferManager.assignPartition(tempPart, "temp");
+
+        BufferFrame index1 = bufferManager.fetchNewPageFrame(indexPart);
+        BufferFrame index2 = bufferManager.fetchNewPageFrame(indexPart);
+        index1.unpin();
+        index2.unpin();
+
+        // temp pages only ever recycle their own frames
+        for (int i = 0; i < 10; i++) {
+            bufferManager.fetchNewPageFrame(tempPart).unpin();
+        }
+        assertTrue(index1.isValid());
+        assertTrue(index2.isValid());
+        assertEquals(2, bufferManager.getNumResidentPages("temp"));
+        assertEquals(2, bufferManager.getNumResidentPages("index"));
+        assertEquals("temp", bufferManager.getPoolName(tempPart));
+        assertEquals(BufferManager.DEFAULT_POOL, bufferManager.getPoolName(3));
+
+        // index pool is capped at 3 frames
+        for (int i = 0; i < 3; i++) {
+            bufferManager.fetchNewPageFrame(indexPart).unpin();
+        }
+        assertEquals(3, bufferManager.getNumResidentPages("index"));
+        assertFalse(index1.isValid());
+    }
+
+    @Test
+    public void testPoolReservation() {
+        int defaultPart = diskSpaceManager.allocPart(1);
+        int indexPart = diskSpaceManager.allocPart(2);
+        bufferManager.createPool("index", 2, 5);
+        bufferManager.assignPartition(indexPart, "index");
+
+        // default pool can only use the 3 frames not reserved for the index pool
+        for (int i = 0; i < 10; i++) {
+            bufferManager.fetchNewPageFrame(defaultPart).unpin();
+        }
+        assertEquals(3, bufferManager.getNumResidentPages(BufferManager.DEFAULT_POOL));
+
+        // index pool grows into the unused default frames once its reservation is used up
+        BufferFrame[] indexFrames = new BufferFrame[5];
+        for (int i = 0; i < indexFrames.length; i++) {
+            indexFrames[i] = bufferManager.fetchNewPageFrame(indexPart);
+        }
+        assertEquals(0, bufferManager.getNumResidentPages(BufferManager.DEFAULT_POOL));
+        assertEquals(5, bufferManager.getNumResidentPages("index"));
+        for (BufferFrame frame : indexFrames) {
+            frame.unpin();
+        }
+
+        // default pool takes back frames lent to the index pool until both borrow evenly
+        for (int i = 0; i < 10; i++) {
+            bufferManager.fetchNewPageFrame(defaultPart).unpin();
+        }
+        assertEquals(2, bufferManager.getNumResidentPages(BufferManager.DEFAULT_POOL));
+        assertEquals(3, bufferManager.getNumResidentPages("index"));
+    }
+
+    @Test
+    public void testCreatePoolInvalidQuota() {
+        assertThrows(IllegalArgumentException.class, () -> bufferManager.createPool("big", 0, 6));
+        assertThrows(IllegalArgumentException.class, () -> bufferManager.createPool("inverted", 3, 2));
+        bufferManager.createPool("a", 3, 5);
+        assertThrows(IllegalArgumentException.class, () -> bufferManager.createPool("b", 3, 5));
+        assertThrows(IllegalArgumentException.class, () -> bufferManager.createPool("a", 0, 1));
+    }
+
+    @Test
+    public void testEvictPart() {
+        int partNum1 = diskSpaceManager.allocPart(1);
+        int partNum2 = diskSpaceManager.allocPart(2);
+
+        BufferFrame frame1 = bufferManager.fetchNewPageFrame(partNum1);
+        BufferFrame frame2 = bufferManager.fetchNewPageFrame(partNum2);
+        BufferFrame frame3 = bufferManager.fetchNewPageFrame(partNum1);
+        BufferFrame frame4 = bufferManager.fetchNewPageFrame(partNum2);
+
+        frame1.unpin();
+        frame2.unpin();
+        frame4.unpin();
+
+        bufferManager.evictPart(partNum1);
+        assertFalse(frame1.isValid());
+        assertTrue(frame2.isValid());
+        assertTrue(frame3.isValid());
+        assertTrue(frame4.isValid());
+        assertEquals(3, bufferManager.getNumResidentPages());
+
+        frame3.unpin();
+        bufferManager.evictAll();
+        assertFalse(frame2.isValid());
+        assertFalse(frame3.isValid());
+        assertFalse(frame4.isValid());
+        assertEquals(0, bufferManager.getNumResidentPages());
+    }
+
+    @Test
+    public void testDumpAndLoadResidentPages() throws IOException {
+        Path dumpFile = tmpFolder.getRoot().toPath().resolve("bufferpool.dump");
+        int partNum = diskSpaceManager.allocPart(1);
+        byte[] expected = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+
+        Page[] pages = new Page[4];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = bufferManager.fetchNewPage(partNum);
+            pages[i].getBuffer().put(expected);
+            pages[i].flush();
+            pages[i].unpin();
+        }
+        bufferManager.enableDump(dumpFile);
+        bufferManager.close();
+
+        bufferManager = new BufferManager(diskSpaceManager, 5);
+        bufferManager.freePage(bufferManager.fetchPage(pages[2].getPageNum()));
+        bufferManager.evictAll();
+        long numIOs = bufferManager.getNumIOs();
+
+        assertEquals(3, bufferManager.loadResidentPages(dumpFile));
+        assertEquals(3, bufferManager.getNumResidentPages());
+        for (int i : new int[] {0, 1, 3}) {
+            Page page = bufferManager.fetchPage(pages[i].getPageNum());
+            byte[] actual = new byte[4];
+            page.getBuffer().get(actual);
+            page.unpin();
+            assertArrayEquals(expected, actual);
+        }
+        // pages 0 and 1 are read together, then page 3
+        assertEquals(numIOs + 2, bufferManager.getNumIOs());
+        assertEquals(3, bufferManager.getStats().snapshot().getHits());
+    }
+
+    @Test
+    public void testLoadMissingDump() {
+        assertEquals(0, bufferManager.loadResidentPages(tmpFolder.getRoot().toPath().resolve("missing")));
+    }
+}
@@ -3,6 +3,8 @@ package org.csfundamental.database.common;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.csfundamental.database.storage.DiskSpaceManagerImpl.DATA_PAGES_PER_HEADER;
 import static org.csfundamental.database.storage.DiskSpaceManager.PAGE_SIZE;
 
@@ -18,4 +20,51 @@ public class BitsTest {
             Assert.assertEquals(++setBitCount, actual);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testNextSetAndClearBit(){
+        byte[] bytes = new byte[21];
+        new Random(186).nextBytes(bytes);
+        int numBits = bytes.length * Byte.SIZE;
+        for (int from = 0; from < numBits; from++){
+            for (int to = from; to <= numBits; to += 7){
+                int expectedSet = -1, expectedClear = -1;
+                for (int i = to - 1; i >= from; i--){
+                    if (Bits.getBit(bytes, i) == Bits.Bit.ONE) expectedSet = i;
+                    else expectedClear = i;
+                }
+                Assert.assertEquals(expectedSet, Bits.nextSetBit(bytes, from, to));
+                Assert.assertEquals(expectedClear, Bits.nextClearBit(bytes, from, to));
+            }
+        }
+        Assert.assertEquals(10, Bits.nextSetBit(new byte[]{0b00000000, 0b00100000}, 0, 16));
+        Assert.assertEquals(-1, Bits.nextSetBit(new byte[]{0b00000000, 0b00100000}, 0, 10));
+        Assert.assertEquals(-1, Bits.indexOfFirstZeroBit(new byte[]{-1, -1}));
+        Assert.assertEquals(9, Bits.indexOfFirstZeroBit(new byte[]{-1, (byte) 0b10111111}));
+    }
+
+    @Test
+    public void testCountAndSetBitsRange(){
+        Random random = new Random(186);
+        for (int trial = 0; trial < 200; trial++){
+            byte[] bytes = new byte[19];
+            random.nextBytes(bytes);
+            byte[] expected = bytes.clone();
+            int from = random.nextInt(bytes.length * Byte.SIZE);
+            int to = from + random.nextInt(bytes.length * Byte.SIZE - from + 1);
+
+            int count = 0;
+            for (int i = from; i < to; i++){
+                if (Bits.getBit(bytes, i) == Bits.Bit.ONE) count++;
+            }
+            Assert.assertEquals(count, Bits.countBits(bytes, from, to));
+
+            Bits.Bit bit = trial % 2 == 0 ? Bits.Bit.ONE : Bits.Bit.ZERO;
+            for (int i = from; i < to; i++){
+                Bits.setBit(expected, i, bit);
+            }
+            Bits.setBits(bytes, from, to, bit);
+            Assert.assertArrayEquals(expected, bytes);
+        }
+    }
+}
@@ -269,4 +269,29 @@ public class DiskSpaceManagerImplTest {
         diskSpaceManager.freePart(partNum2);
         diskSpaceManager.close();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testReadPagesAcrossHeaderPages() throws IOException {
+        DiskSpaceManager dsm = createDiskSpaceManager();
+        int partNum = dsm.allocPart();
+        long firstPage = DiskSpaceManager.getVirtualPageNum(partNum, DiskSpaceManagerImpl.DATA_PAGES_PER_HEADER - 2);
+
+        byte[][] bufs = new byte[4][DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < bufs.length; ++i) {
+            dsm.allocPage(firstPage + i);
+            for (int j = 0; j < bufs[i].length; ++j) {
+                bufs[i][j] = (byte) ((i * 31 + j) & 0xFF);
+            }
+            dsm.writePage(firstPage + i, bufs[i]);
+        }
+        byte[][] readbufs = new byte[4][DiskSpaceManager.PAGE_SIZE];
+        dsm.readPages(firstPage, readbufs);
+
+        for (int i = 0; i < bufs.length; ++i) {
+            assertArrayEquals(bufs[i], readbufs[i]);
+        }
+
+        dsm.freePart(partNum);
+        dsm.close();
+    }
+}
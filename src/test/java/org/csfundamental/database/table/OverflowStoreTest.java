@@ -0,0 +1,92 @@
+package org.csfundamental.database.table;
+
+import org.csfundamental.database.DatabaseException;
+import org.csfundamental.database.buffer.BufferManager;
+import org.csfundamental.database.buffer.Page;
+import org.csfundamental.database.storage.DiskSpaceManager;
+import org.csfundamental.database.storage.MockDiskSpaceManager;
+import org.csfundamental.database.storage.PageException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OverflowStoreTest {
+    private DiskSpaceManager diskSpaceManager;
+    private BufferManager bufferManager;
+    private OverflowStore store;
+    private int partNum;
+
+    @Before
+    public void beforeEach() {
+        diskSpaceManager = new MockDiskSpaceManager();
+        partNum = diskSpaceManager.allocPart(1);
+        bufferManager = new BufferManager(diskSpaceManager, 5);
+        store = new OverflowStore(bufferManager, partNum);
+    }
+
+    @After
+    public void afterEach() {
+        bufferManager.close();
+        diskSpaceManager.close();
+    }
+
+    private static String largeValue(int minLength) {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; value.length() < minLength; ++i) {
+            value.append(i).append(',');
+        }
+        return value.toString();
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        String value = largeValue(3 * BufferManager.EFFECTIVE_PAGE_SIZE);
+        long pointer = store.write(value);
+        long empty = store.write(new byte[0]);
+
+        assertEquals(value.length(), store.length(pointer));
+        assertEquals(value, store.readString(pointer));
+        byte[] prefix = new byte[10];
+        try (InputStream in = store.open(pointer)) {
+            assertEquals(10, in.readNBytes(prefix, 0, 10));
+        }
+        assertEquals(value.substring(0, 10), new String(prefix));
+        assertEquals(0, store.length(empty));
+        assertEquals(0, store.read(empty).length);
+    }
+
+    @Test
+    public void testFree() {
+        long pointer = store.write(largeValue(2 * BufferManager.EFFECTIVE_PAGE_SIZE));
+        store.free(pointer);
+        assertThrows(PageException.class, () -> store.length(pointer));
+        assertThrows(DatabaseException.class, () -> store.free(DiskSpaceManager.INVALID_PAGE_NUM));
+    }
+
+    @Test
+    public void testFailedWriteReleasesPage() {
+        bufferManager.setPinWaitTimeout(50, TimeUnit.MILLISECONDS);
+        Page[] pinned = new Page[4];
+        for (int i = 0; i < pinned.length; i++) {
+            pinned[i] = bufferManager.fetchNewPage(partNum);
+        }
+        // the writer holds the last frame, and cannot get a second page
+        OverflowStore.Writer writer = store.newValue();
+        byte[] value = new byte[OverflowStore.DATA_SIZE + 1];
+        assertThrows(IllegalStateException.class, () -> writer.write(value, 0, value.length));
+        // the stream is closed without writing its page
+        assertThrows(IllegalStateException.class, () -> writer.write(value, 0, 1));
+
+        for (Page page : pinned) {
+            page.unpin();
+        }
+        for (int i = 0; i < 5; i++) {
+            bufferManager.fetchNewPage(partNum);
+        }
+    }
+}
@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.Assert.*;
 
@@ -61,6 +62,65 @@ public class PageDirectoryTest {
         assertNotEquals(p4, p5);
     }
 
+    @Test
+    public void testFetchPageWithSpaceUsesInsertionHint() throws Exception {
+        this.pageDirectory = new PageDirectory(bufferManager, partNum, firstHeaderPageNum);
+        short fullPageSize = pageDirectory.getEffectivePageSize();
+        Page p1 = pageDirectory.fetchPageWithSpace((short) (fullPageSize - 100));
+        Page p2 = pageDirectory.fetchPageWithSpace((short) (fullPageSize - 2000));
+        // p1 is the best fit, but p2 was handed out last to this thread
+        Page p3 = pageDirectory.fetchPageWithSpace((short) 50);
+        p1.unpin(); p2.unpin(); p3.unpin();
+        assertNotEquals(p1.getPageNum(), p2.getPageNum());
+        assertEquals(p2.getPageNum(), p3.getPageNum());
+
+        // other threads have their own hint, and start from the best fit
+        long[] other = new long[1];
+        Thread thread = new Thread(() -> {
+            Page page = pageDirectory.fetchPageWithSpace((short) 50);
+            other[0] = page.getPageNum();
+            page.unpin();
+        });
+        thread.start();
+        thread.join();
+        assertEquals(p1.getPageNum(), other[0]);
+
+        // once the hinted page is full, the search starts over
+        Page p4 = pageDirectory.fetchPageWithSpace((short) 1960);
+        p4.unpin();
+        assertNotEquals(p2.getPageNum(), p4.getPageNum());
+    }
+
+    @Test
+    public void testFetchPageWithSpaceSharesPageOfIdleThread() throws Exception {
+        this.pageDirectory = new PageDirectory(bufferManager, partNum, firstHeaderPageNum);
+        long[] other = new long[1];
+        CountDownLatch inserted = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        // the thread stays alive with its insertion page, without inserting again
+        Thread thread = new Thread(() -> {
+            Page page = pageDirectory.fetchPageWithSpace((short) 50);
+            other[0] = page.getPageNum();
+            page.unpin();
+            inserted.countDown();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        inserted.await();
+
+        // no other page has space: the page of the idle thread is used instead of a new one
+        Page page = pageDirectory.fetchPageWithSpace((short) 50);
+        page.unpin();
+        assertEquals(other[0], page.getPageNum());
+        assertEquals(1, pageDirectory.getNumDataPages());
+        done.countDown();
+        thread.join();
+    }
+
     @Test
     public void testFetchPageWithSpaceWithTwoPageDirectories(){
         Random rand = new Random();
@@ -179,6 +239,51 @@ public class PageDirectoryTest {
         } catch (PageException e) { /* do nothing */ }
     }
 
+    @Test
+    public void testUpdateFreeSpaceKeepsReservedPage() throws Exception {
+        this.pageDirectory = new PageDirectory(bufferManager,partNum, firstHeaderPageNum);
+        short fullPageSize = pageDirectory.getEffectivePageSize();
+
+        // the page is handed out and still pinned: emptying it does not free it
+        Page dataPage = pageDirectory.fetchPageWithSpace((short) 10);
+        pageDirectory.updateFreeSpace(dataPage, fullPageSize);
+        assertEquals(1, pageDirectory.getNumDataPages());
+        pageDirectory.updateFreeSpace(dataPage, (short) 10);
+        dataPage.unpin();
+        pageDirectory.updateFreeSpace(dataPage, fullPageSize);
+        assertEquals(0, pageDirectory.getNumDataPages());
+
+        // the page is kept by another thread for its next insertions
+        long[] other = new long[1];
+        CountDownLatch inserted = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            Page page = pageDirectory.fetchPageWithSpace((short) 10);
+            other[0] = page.getPageNum();
+            page.unpin();
+            inserted.countDown();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        inserted.await();
+        Page page = pageDirectory.fetchPage(other[0]);
+        pageDirectory.updateFreeSpace(page, fullPageSize);
+        page.unpin();
+        assertEquals(1, pageDirectory.getNumDataPages());
+        done.countDown();
+        thread.join();
+
+        // the full page is found again
+        page = pageDirectory.fetchPageWithSpace(fullPageSize);
+        page.unpin();
+        assertEquals(other[0], page.getPageNum());
+        assertEquals(1, pageDirectory.getNumDataPages());
+    }
+
     @Test
     public void testIterator() {
         this.pageDirectory = new PageDirectory(bufferManager,partNum, firstHeaderPageNum);
@@ -238,4 +343,61 @@ public class PageDirectoryTest {
             assertEquals(page, p);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFetchPageWithSpaceAfterReopen() {
+        this.pageDirectory = new PageDirectory(bufferManager, partNum, firstHeaderPageNum);
+        short fullPageSize = pageDirectory.getEffectivePageSize();
+        Page p1 = pageDirectory.fetchPageWithSpace((short) (fullPageSize - 100));
+        Page p2 = pageDirectory.fetchPageWithSpace((short) (fullPageSize - 200));
+        Page p3 = pageDirectory.fetchPageWithSpace(fullPageSize);
+        p1.unpin(); p2.unpin(); p3.unpin();
+        pageDirectory.updateFreeSpace(p3, fullPageSize);
+
+        // free space map is rebuilt from the header pages
+        PageDirectory reopened = new PageDirectory(bufferManager, partNum, firstHeaderPageNum);
+        Page p4 = reopened.fetchPageWithSpace((short) 150);
+        Page p5 = reopened.fetchPageWithSpace((short) 100);
+        Page p6 = reopened.fetchPageWithSpace((short) 60);
+        p4.unpin(); p5.unpin(); p6.unpin();
+
+        assertEquals(p2, p4);
+        assertEquals(p1, p5);
+        // p2 has 50 bytes left, p1 none
+        assertNotEquals(p1, p6);
+        assertNotEquals(p2, p6);
+        assertEquals(3, reopened.getNumDataPages());
+    }
+
+    @Test
+    public void testReopenWithManyHeaders() {
+        this.pageDirectory = new PageDirectory(bufferManager, partNum, firstHeaderPageNum);
+        short fullPageSize = pageDirectory.getEffectivePageSize();
+        int numPages = PageDirectory.HEADER_ENTRY_COUNT * 2 + 1;
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < numPages; i++){
+            Page page = pageDirectory.fetchPageWithSpace(fullPageSize);
+            page.unpin();
+            pages.add(page);
+        }
+
+        PageDirectory reopened = new PageDirectory(bufferManager, partNum, firstHeaderPageNum);
+        assertEquals(numPages, reopened.getNumDataPages());
+
+        // last page is managed by the third header page
+        Page last = pages.get(numPages - 1);
+        reopened.updateFreeSpace(last, (short) 10);
+        Page page = reopened.fetchPageWithSpace((short) 10);
+        page.unpin();
+        assertEquals(last, page);
+
+        Iterator<Page> iter = reopened.iterator();
+        for (Page expected : pages) {
+            assertTrue(iter.hasNext());
+            Page p = iter.next();
+            p.unpin();
+            assertEquals(expected, p);
+        }
+        assertFalse(iter.hasNext());
+    }
+}
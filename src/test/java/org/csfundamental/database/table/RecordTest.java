@@ -4,9 +4,12 @@ import org.csfundamental.database.TestUtils;
 import org.csfundamental.database.buffer.BufferManager;
 import org.csfundamental.database.buffer.Page;
 import org.csfundamental.database.common.Buffer;
+import org.csfundamental.database.common.ByteBuffer;
 import org.csfundamental.database.storage.DiskSpaceManager;
 import org.csfundamental.database.storage.MockDiskSpaceManager;
+import org.csfundamental.database.table.databox.StringDataBox;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -58,4 +61,73 @@ public class RecordTest {
         Record actualRecord = Record.fromBytes(newBuf, schema);
         Assert.assertEquals(actualRecord, record);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testWriteToPageBuffer(){
+        Page page = this.pageDirectory.fetchPageWithSpace(this.pageDirectory.getEffectivePageSize());
+        Record record = TestUtils.createRecordWithAllTypes(3);
+        int varOffset = PageDirectory.DATA_HEADER_SIZE + schema.getSizeInBytes();
+
+        record.writeTo(page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE), schema);
+        record.writeVarTo(page.getBuffer().position(varOffset), schema);
+
+        byte[] bytes = new byte[schema.getSizeInBytes()];
+        page.getBuffer().position(PageDirectory.DATA_HEADER_SIZE).get(bytes);
+        Assert.assertArrayEquals(record.toBytes(schema), bytes);
+        byte[] varBytes = new byte[record.getVarSize(schema)];
+        page.getBuffer().position(varOffset).get(varBytes);
+        Assert.assertArrayEquals(record.toVarBytes(schema), varBytes);
+        Assert.assertEquals(record, Record.fromVarBytes(page.getBuffer().position(varOffset), schema));
+        page.unpin();
+    }
+
+    @Test
+    public void testEncodedStringWiderThanField(){
+        String value = "\u00e9\u00e9\u00e9";
+        Assume.assumeTrue(value.getBytes().length > value.length());
+        try {
+            new StringDataBox(value, value.length());
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // the encoded string does not fit in the field
+        }
+    }
+
+    @Test
+    public void testWritePackedRecord(){
+        Record record = TestUtils.createRecordWithAllTypes(5);
+        byte[] bytes = record.toBytes(schema);
+        // a whole array, and a record at some offset of a shared array
+        byte[] shared = new byte[bytes.length + 10];
+        System.arraycopy(bytes, 0, shared, 10, bytes.length);
+        for (PackedRecord packed : new PackedRecord[] {new PackedRecord(schema, bytes), new PackedRecord(schema, shared, 10)}) {
+            Buffer buf = ByteBuffer.allocate(bytes.length);
+            packed.writeTo(buf, schema);
+            Assert.assertEquals(record, Record.fromBytes(buf.position(0), schema));
+        }
+    }
+
+    @Test
+    public void testPackedRecord(){
+        Record record = TestUtils.createRecordWithAllTypes(-7);
+        PackedRecord packed = new PackedRecord(schema, record.toBytes(schema));
+
+        Assert.assertEquals(0L, packed.getLong(0));
+        Assert.assertEquals(-7, packed.getInt(1));
+        Assert.assertEquals("Alice", packed.getString(2));
+        Assert.assertEquals("King", packed.getString(3));
+        Assert.assertEquals(56.0F, packed.getFloat(4), 0);
+        Assert.assertTrue(packed.getBool(5));
+        Assert.assertArrayEquals(record.getByteArray(6), packed.getByteArray(6));
+        Assert.assertEquals(record, packed);
+        Assert.assertEquals(packed, record);
+        Assert.assertEquals(record.hashCode(), packed.hashCode());
+        Assert.assertArrayEquals(record.toBytes(schema), packed.toBytes(schema));
+        Assert.assertArrayEquals(record.toVarBytes(schema), packed.toVarBytes(schema));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testPackedRecordWrongType(){
+        new PackedRecord(schema, TestUtils.createRecordWithAllTypes().toBytes(schema)).getInt(0);
+    }
+}
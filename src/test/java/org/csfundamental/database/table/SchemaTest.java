@@ -6,6 +6,7 @@ import org.csfundamental.database.buffer.Page;
 import org.csfundamental.database.common.Buffer;
 import org.csfundamental.database.storage.DiskSpaceManager;
 import org.csfundamental.database.storage.MockDiskSpaceManager;
+import org.csfundamental.database.table.databox.Type;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -42,4 +43,28 @@ public class SchemaTest {
         Schema actualSchema = Schema.fromBytes(newBuf);
         Assert.assertEquals(actualSchema, expectedSchema);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFieldOffsets(){
+        Schema schema = TestUtils.createSchemaWithAllTypes();
+        int[] expectedOffsets = {0, 8, 12, 268, 524, 528, 529};
+        for (int i = 0; i < schema.size(); i++){
+            Assert.assertEquals(expectedOffsets[i], schema.getFieldOffset(i));
+            Assert.assertEquals(i, (int) schema.findField(schema.getFieldName(i)));
+        }
+        Assert.assertFalse(schema.isFixedWidth());
+
+        Schema copy = new Schema(schema.getFieldNames(), schema.getFieldTypes());
+        Assert.assertEquals(schema, copy);
+        Assert.assertEquals(schema.getSizeInBytes(), copy.getSizeInBytes());
+        Assert.assertEquals(529, copy.getFieldOffset(6));
+
+        Schema numbers = new Schema().add("a", Type.fromInt()).add("b", Type.fromLong());
+        Assert.assertTrue(numbers.isFixedWidth());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testFindMissingField(){
+        TestUtils.createSchemaWithAllTypes().findField("missing");
+    }
+}
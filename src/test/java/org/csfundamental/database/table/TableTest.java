@@ -1,80 +1,102 @@
-//package org.csfundamental.database.table;
-//
-//import org.csfundamental.database.DatabaseException;
-//import org.csfundamental.database.TestUtils;
-//import org.csfundamental.database.buffer.BufferManager;
-//import org.csfundamental.database.buffer.Page;
-//import org.csfundamental.database.common.iterator.BacktrackingIterator;
-//import org.csfundamental.database.storage.DiskSpaceManager;
-//import org.csfundamental.database.storage.MemoryDiskSpaceManager;
-//import org.csfundamental.database.table.databox.Type;
-//import org.junit.Assert;
-//import org.junit.Before;
-//import org.junit.Rule;
-//import org.junit.Test;
-//import org.junit.rules.TemporaryFolder;
-//
-//import java.util.ArrayList;
-//import java.util.List;
-//
-//import static org.junit.Assert.*;
-//
-//public class TableTest {
-//    private static final String TABLENAME = "testtable";
-//    private PageDirectory pageDirectory;
-//    private Table table;
-//    private Schema schema;
-//    private BufferManager bufferManager;
-//    @Rule
-//    public TemporaryFolder fileDir = new TemporaryFolder();
-//
-//    @Before
-//    public void setup(){
-//        int partNum = 1;
-//        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
-//        diskSpaceManager.allocPart(partNum);
-//        this.bufferManager = new BufferManager(diskSpaceManager, 1024);
-//        Page page = this.bufferManager.fetchNewPage(partNum);
-//        this.pageDirectory = new PageDirectory(this.bufferManager, partNum, page.getPageNum());
-//        this.schema = TestUtils.createSchemaWithAllTypes();
-//        this.table = new Table(TABLENAME, this.pageDirectory, this.schema);
-//    }
-//
-//    @Test
-//    public void testGetNumRecordsPerPage(){
-//        assertEquals(785, schema.getSizeInBytes());
-//        assertEquals(4050, this.pageDirectory.getEffectivePageSize());
-//        // bitmap size + records * recordSize
-//        // 50 + (400 * 10) = 4050
-//        // 51 + (408 * 10) = 4131
-//        assertEquals(5, table.getNumRecordsPerPage());
-//    }
-//
-//    @Test
-//    public void testSingleInsertAndGet() {
-//        Record expected = TestUtils.createRecordWithAllTypes();
-//        RecordId rid = table.addRecord(expected);
-//        Record actual = table.getRecord(rid);
-//        assertEquals(expected, actual);
-//    }
-//
-//    @Test
-//    public void testThreePagesOfInserts() {
-//        List<RecordId> rids = new ArrayList<>();
-//        List<Record> records = new ArrayList<>();
-//        for (int i = 0; i < table.getNumRecordsPerPage() * 3; ++i) {
-//            Record r = TestUtils.createRecordWithAllTypes(i);
-//            records.add(r);
-//            rids.add(table.addRecord(r));
-//        }
-//
-//        for (int i = 0; i < table.getNumRecordsPerPage() * 3; ++i) {
-//            Record expectedRecord = records.get(i);
-//            Record actualRecord = table.getRecord(rids.get(i));
-//            Assert.assertEquals(expectedRecord, actualRecord);
-//        }
-//    }
-//
+package org.csfundamental.database.table;
+
+import org.csfundamental.database.DatabaseException;
+import org.csfundamental.database.TestUtils;
+import org.csfundamental.database.buffer.BufferManager;
+import org.csfundamental.database.buffer.BufferPoolStats;
+import org.csfundamental.database.buffer.Page;
+import org.csfundamental.database.common.PredicateOperator;
+import org.csfundamental.database.common.iterator.BacktrackingIterator;
+import org.csfundamental.database.storage.DiskSpaceManager;
+import org.csfundamental.database.storage.MockDiskSpaceManager;
+import org.csfundamental.database.storage.PageException;
+import org.csfundamental.database.table.databox.DataBox;
+import org.csfundamental.database.table.databox.IntDataBox;
+import org.csfundamental.database.table.databox.LongDataBox;
+import org.csfundamental.database.table.databox.StringDataBox;
+import org.csfundamental.database.table.databox.Type;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class TableTest {
+    private static final String TABLENAME = "testtable";
+    private PageDirectory pageDirectory;
+    private Table table;
+    private Schema schema;
+    private BufferManager bufferManager;
+    @Rule
+    public TemporaryFolder fileDir = new TemporaryFolder();
+
+    private PageDirectory createPageDirectory() {
+        Page page = this.bufferManager.fetchNewPage(1);
+        page.unpin();
+        return new PageDirectory(this.bufferManager, 1, page.getPageNum());
+    }
+
+    @Before
+    public void setup(){
+        int partNum = 1;
+        DiskSpaceManager diskSpaceManager = new MockDiskSpaceManager();
+        diskSpaceManager.allocPart(partNum);
+        this.bufferManager = new BufferManager(diskSpaceManager, 1024);
+        Page page = this.bufferManager.fetchNewPage(partNum);
+        this.pageDirectory = new PageDirectory(this.bufferManager, partNum, page.getPageNum());
+        this.schema = TestUtils.createSchemaWithAllTypes();
+        this.table = new Table(TABLENAME, this.pageDirectory, this.schema);
+    }
+
+    @Test
+    public void testGetNumRecordsPerPage(){
+        assertEquals(785, schema.getSizeInBytes());
+        assertEquals(4050, this.pageDirectory.getEffectivePageSize());
+        // bitmap size + records * recordSize
+        // 50 + (400 * 10) = 4050
+        // 51 + (408 * 10) = 4131
+        assertEquals(5, table.getNumRecordsPerPage());
+    }
+
+    @Test
+    public void testSingleInsertAndGet() {
+        Record expected = TestUtils.createRecordWithAllTypes();
+        RecordId rid = table.addRecord(expected);
+        Record actual = table.getRecord(rid);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testThreePagesOfInserts() {
+        List<RecordId> rids = new ArrayList<>();
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < table.getNumRecordsPerPage() * 3; ++i) {
+            Record r = TestUtils.createRecordWithAllTypes(i);
+            records.add(r);
+            rids.add(table.addRecord(r));
+        }
+
+        for (int i = 0; i < table.getNumRecordsPerPage() * 3; ++i) {
+            Record expectedRecord = records.get(i);
+            Record actualRecord = table.getRecord(rids.get(i));
+            Assert.assertEquals(expectedRecord, actualRecord);
+        }
+    }
+
 //    @Test
 //    public void testManyPagesOfInserts() {
 //        List<RecordId> rids = new ArrayList<>();
@@ -85,34 +107,727 @@
 //            records.add(r);
 //            rids.add(table.addRecord(r));
 //        }
-//
+
 //        for (int i = 0; i < table.getNumRecordsPerPage() * numPages; ++i) {
 //            Record expectedRecord = records.get(i);
 //            Record actualRecord = table.getRecord(rids.get(i));
 //            Assert.assertEquals(expectedRecord, actualRecord);
 //        }
 //    }
-//
-//    /**
-//     * Basic test over a full page of records to check that next/hasNext work.
-//     */
-//    @Test
-//    public void testRIDPageIterator() throws DatabaseException {
-//        List<Record> records = new ArrayList<>();
-//        for (int i = 0; i < table.getNumRecordsPerPage() * 3; ++i) {
-//            Record record = TestUtils.createRecordWithAllTypes(i);
-//            records.add(record);
-//            table.addRecord(record);
-//        }
-//        BacktrackingIterator<Page> pgIterator = table.pageIterator();
-//        Page page = pgIterator.next();
-//
-//        BacktrackingIterator<Record> iter = table.recordIterator(table.new RIDPageIterator(page));
-//        int i = 0;
-//        while(iter.hasNext()){
-//            Record actualRecord = iter.next();
-//            Record expectedRecord = records.get(i++);
-//            Assert.assertEquals(actualRecord, expectedRecord);
-//        }
-//    }
-//}
\ No newline at end of file
+
+    /**
+     * Basic test over a full page of records to check that next/hasNext work.
+     */
+    @Test
+    public void testRIDPageIterator() throws DatabaseException {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < table.getNumRecordsPerPage() * 3; ++i) {
+            Record record = TestUtils.createRecordWithAllTypes(i);
+            records.add(record);
+            table.addRecord(record);
+        }
+        BacktrackingIterator<Page> pgIterator = table.pageIterator();
+        Page page = pgIterator.next();
+
+        BacktrackingIterator<Record> iter = table.recordIterator(table.new RIDPageIterator(page));
+        int i = 0;
+        while(iter.hasNext()){
+            Record actualRecord = iter.next();
+            Record expectedRecord = records.get(i++);
+            Assert.assertEquals(actualRecord, expectedRecord);
+        }
+    }
+
+    @Test
+    public void testAddRecords() {
+        List<Record> records = new ArrayList<>();
+        int numRecords = table.getNumRecordsPerPage() * 3 + 2;
+        for (int i = 0; i < numRecords; ++i) {
+            records.add(TestUtils.createRecordWithAllTypes(i));
+        }
+        List<RecordId> rids = table.addRecords(records.iterator());
+
+        assertEquals(numRecords, rids.size());
+        assertEquals(4, pageDirectory.getNumDataPages());
+        for (int i = 0; i < numRecords; ++i) {
+            assertEquals(i % table.getNumRecordsPerPage(), rids.get(i).getEntryNum());
+            assertEquals(records.get(i), table.getRecord(rids.get(i)));
+        }
+    }
+
+    @Test
+    public void testAddRecordsFillsPartialPage() {
+        RecordId first = table.addRecord(TestUtils.createRecordWithAllTypes(0));
+
+        List<Record> records = new ArrayList<>();
+        for (int i = 1; i < table.getNumRecordsPerPage() + 1; ++i) {
+            records.add(TestUtils.createRecordWithAllTypes(i));
+        }
+        List<RecordId> rids = table.addRecords(records.iterator());
+
+        // the remaining slots of the first page are filled before a new page is allocated
+        for (int i = 0; i < rids.size() - 1; ++i) {
+            assertEquals(first.getPageNum(), rids.get(i).getPageNum());
+            assertEquals(i + 1, rids.get(i).getEntryNum());
+        }
+        assertNotEquals(first.getPageNum(), rids.get(rids.size() - 1).getPageNum());
+
+        // a full page is not handed out again
+        RecordId last = table.addRecord(TestUtils.createRecordWithAllTypes(0));
+        assertEquals(rids.get(rids.size() - 1).getPageNum(), last.getPageNum());
+        assertEquals(1, last.getEntryNum());
+        for (int i = 0; i < records.size(); ++i) {
+            assertEquals(records.get(i), table.getRecord(rids.get(i)));
+        }
+    }
+
+    @Test
+    public void testIterator() {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < table.getNumRecordsPerPage() * 3 + 2; ++i) {
+            Record record = TestUtils.createRecordWithAllTypes(i);
+            records.add(record);
+            table.addRecord(record);
+        }
+
+        BacktrackingIterator<Record> iter = table.iterator();
+        for (Record expected : records) {
+            assertTrue(iter.hasNext());
+            assertEquals(expected, iter.next());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testIteratorEmptyTable() {
+        assertFalse(table.iterator().hasNext());
+    }
+
+    @Test
+    public void testIteratorMarkReset() {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < table.getNumRecordsPerPage() * 3; ++i) {
+            records.add(TestUtils.createRecordWithAllTypes(i));
+        }
+        table.addRecords(records.iterator());
+
+        BacktrackingIterator<Record> iter = table.iterator();
+        int markIndex = table.getNumRecordsPerPage() + 1;
+        for (int i = 0; i < markIndex; ++i) {
+            iter.next();
+        }
+        iter.markNext();
+        while (iter.hasNext()) {
+            iter.next();
+        }
+        iter.reset();
+        for (int i = markIndex; i < records.size(); ++i) {
+            assertTrue(iter.hasNext());
+            assertEquals(records.get(i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testSlottedInsertAndGet() {
+        PageDirectory slottedPageDirectory = createPageDirectory();
+        Table slotted = new Table(TABLENAME, slottedPageDirectory, schema, TableFormat.SLOTTED);
+        assertEquals(TableFormat.SLOTTED, slotted.getFormat());
+
+        List<Record> records = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < table.getNumRecordsPerPage() * 3; ++i) {
+            Record record = TestUtils.createRecordWithAllTypes(i);
+            records.add(record);
+            rids.add(slotted.addRecord(record));
+        }
+        for (int i = 0; i < records.size(); ++i) {
+            assertEquals(records.get(i), slotted.getRecord(rids.get(i)));
+        }
+
+        // "Alice" and "King" take 13 bytes instead of 512: 13 records per page instead of 5
+        assertEquals(2, slottedPageDirectory.getNumDataPages());
+        BacktrackingIterator<Record> iter = slotted.iterator();
+        for (Record expected : records) {
+            assertTrue(iter.hasNext());
+            assertEquals(expected, iter.next());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testSlottedAddRecords() {
+        PageDirectory slottedPageDirectory = createPageDirectory();
+        Table slotted = new Table(TABLENAME, slottedPageDirectory, schema, TableFormat.SLOTTED);
+
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            records.add(TestUtils.createRecordWithAllTypes(i));
+        }
+        List<RecordId> rids = slotted.addRecords(records.iterator());
+        RecordId rid = slotted.addRecord(TestUtils.createRecordWithAllTypes(100));
+
+        // 100 records of 286 bytes (plus 4 for the slot) need 8 pages, the last one not full
+        assertEquals(8, slottedPageDirectory.getNumDataPages());
+        assertEquals(rids.get(rids.size() - 1).getPageNum(), rid.getPageNum());
+        for (int i = 0; i < records.size(); ++i) {
+            assertEquals(records.get(i), slotted.getRecord(rids.get(i)));
+        }
+    }
+
+    @Test(expected = DatabaseException.class)
+    public void testSlottedGetMissingRecord() {
+        Table slotted = new Table(TABLENAME, createPageDirectory(), schema, TableFormat.SLOTTED);
+        RecordId rid = slotted.addRecord(TestUtils.createRecordWithAllTypes());
+        slotted.getRecord(new RecordId(rid.getPageNum(), (short) 1));
+    }
+
+    @Test
+    public void testPaxInsertAndGet() {
+        PageDirectory paxPageDirectory = createPageDirectory();
+        Table pax = new Table(TABLENAME, paxPageDirectory, schema, TableFormat.PAX);
+        assertEquals(table.getNumRecordsPerPage(), pax.getNumRecordsPerPage());
+
+        List<Record> records = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < pax.getNumRecordsPerPage() * 2 + 1; ++i) {
+            Record record = TestUtils.createRecordWithAllTypes(i);
+            records.add(record);
+            rids.add(pax.addRecord(record));
+        }
+        records.addAll(List.of(TestUtils.createRecordWithAllTypes(-1), TestUtils.createRecordWithAllTypes(-2)));
+        rids.addAll(pax.addRecords(records.subList(records.size() - 2, records.size()).iterator()));
+
+        assertEquals(3, paxPageDirectory.getNumDataPages());
+        for (int i = 0; i < records.size(); ++i) {
+            assertEquals(records.get(i), pax.getRecord(rids.get(i)));
+        }
+        BacktrackingIterator<Record> iter = pax.iterator();
+        for (Record expected : records) {
+            assertTrue(iter.hasNext());
+            assertEquals(expected, iter.next());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testProjectedIterator() {
+        List<String> columnNames = List.of("last name", "age");
+        int[] columns = {3, 1};
+        for (TableFormat format : TableFormat.values()) {
+            Table t = new Table(TABLENAME, createPageDirectory(), schema, format);
+            List<Record> records = new ArrayList<>();
+            for (int i = 0; i < t.getNumRecordsPerPage() * 3; ++i) {
+                records.add(TestUtils.createRecordWithAllTypes(i));
+            }
+            t.addRecords(records.iterator());
+
+            BacktrackingIterator<Record> iter = t.projectedIterator(columnNames);
+            for (Record expected : records) {
+                assertTrue(iter.hasNext());
+                Record record = iter.next();
+                assertEquals(2, record.size());
+                assertEquals(expected.project(columns), record);
+            }
+            assertFalse(iter.hasNext());
+        }
+    }
+
+    @Test
+    public void testParallelScan() {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < table.getNumRecordsPerPage() * 40 + 3; ++i) {
+            records.add(TestUtils.createRecordWithAllTypes(i));
+        }
+        table.addRecords(records.iterator());
+
+        assertEquals(records, table.parallelScan(4, s -> s.collect(Collectors.toList())));
+        long sum = table.parallelScan(4, s -> s.mapToLong(r -> r.getInt(1)).sum());
+        assertEquals((long) records.size() * (records.size() - 1) / 2, sum);
+    }
+
+    @Test
+    public void testSpliteratorSplitsByPages() {
+        table.addRecords(List.of(TestUtils.createRecordWithAllTypes(), TestUtils.createRecordWithAllTypes()).iterator());
+        Spliterator<Record> spliterator = table.spliterator();
+        assertNull(spliterator.trySplit());
+
+        for (int i = 0; i < table.getNumRecordsPerPage() * 3; ++i) {
+            table.addRecord(TestUtils.createRecordWithAllTypes(i));
+        }
+        spliterator = table.spliterator();
+        Spliterator<Record> prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        List<Record> scanned = new ArrayList<>();
+        prefix.forEachRemaining(scanned::add);
+        spliterator.forEachRemaining(scanned::add);
+        List<Record> expected = new ArrayList<>();
+        table.iterator().forEachRemaining(expected::add);
+        assertEquals(expected, scanned);
+    }
+
+    @Test
+    public void testUpdateAndDeleteRecord() {
+        for (TableFormat format : TableFormat.values()) {
+            PageDirectory pgDir = createPageDirectory();
+            Table t = new Table(TABLENAME, pgDir, schema, format);
+            RecordId rid0 = t.addRecord(TestUtils.createRecordWithAllTypes(0));
+            RecordId rid1 = t.addRecord(TestUtils.createRecordWithAllTypes(1));
+
+            Record updated = TestUtils.createRecordWithAllTypes(2);
+            assertEquals(TestUtils.createRecordWithAllTypes(0).getInt(1), t.updateRecord(rid0, updated).getInt(1));
+            assertEquals(updated, t.getRecord(rid0));
+
+            assertEquals(TestUtils.createRecordWithAllTypes(1).getInt(1), t.deleteRecord(rid1).getInt(1));
+            try {
+                t.getRecord(rid1);
+                fail();
+            } catch (DatabaseException e) {
+                // expected
+            }
+            // deleting the last record gives the page back
+            t.deleteRecord(rid0);
+            assertEquals(0, pgDir.getNumDataPages());
+            assertFalse(t.iterator().hasNext());
+        }
+    }
+
+    @Test
+    public void testDeleteAndUpdateRecordsInBulk() {
+        for (TableFormat format : TableFormat.values()) {
+            PageDirectory pgDir = createPageDirectory();
+            Table t = new Table(TABLENAME, pgDir, schema, format);
+            List<Record> records = new ArrayList<>();
+            for (int i = 0; i < t.getNumRecordsPerPage() * 4; ++i) {
+                records.add(TestUtils.createRecordWithAllTypes(i));
+            }
+            List<RecordId> rids = t.addRecords(records.iterator());
+            int numPages = pgDir.getNumDataPages();
+
+            // the records of the first page, and every other record
+            List<RecordId> deleted = new ArrayList<>();
+            for (int i = 0; i < rids.size(); ++i) {
+                if (rids.get(i).getPageNum() == rids.get(0).getPageNum() || i % 2 == 0) {
+                    deleted.add(rids.get(i));
+                }
+            }
+            Collections.reverse(deleted);
+            t.deleteRecords(deleted);
+            assertEquals(numPages - 1, pgDir.getNumDataPages());
+
+            t.updateRecords(List.of(rids.get(rids.size() - 3), rids.get(rids.size() - 1)),
+                    r -> r.withValue(1, new IntDataBox(-r.getInt(1))));
+            assertEquals(-(records.size() - 1), t.getRecord(rids.get(rids.size() - 1)).getInt(1));
+
+            assertEquals(1, t.updateRecordsWhere(r -> r.getInt(1) == -(records.size() - 1),
+                    r -> r.withValue(1, new IntDataBox(0))));
+            int numLeft = rids.size() - deleted.size();
+            assertEquals(numLeft - 1, t.deleteRecordsWhere(r -> r.getInt(1) != 0));
+            BacktrackingIterator<Record> iter = t.iterator();
+            assertEquals(0, iter.next().getInt(1));
+            assertFalse(iter.hasNext());
+        }
+    }
+
+    private static Record stringsRecord(Schema strings, String c, int length) {
+        List<DataBox> values = new ArrayList<>();
+        for (int i = 0; i < strings.size(); ++i) {
+            values.add(new StringDataBox(c.repeat(length), 250));
+        }
+        return new Record(values);
+    }
+
+    @Test
+    public void testSlottedUpdateGrowsRecord() {
+        Schema strings = new Schema().add("a", Type.fromString(250)).add("b", Type.fromString(250))
+                .add("c", Type.fromString(250)).add("d", Type.fromString(250));
+        Table slotted = new Table(TABLENAME, createPageDirectory(), strings, TableFormat.SLOTTED);
+        // 908 bytes per record
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            rids.add(slotted.addRecord(stringsRecord(strings, "x", 225)));
+        }
+        assertEquals(1, rids.stream().map(RecordId::getPageNum).distinct().count());
+
+        // 1008 bytes: only fits once the space of the deleted records is compacted
+        slotted.deleteRecords(List.of(rids.get(0), rids.get(2)));
+        Record grown = stringsRecord(strings, "y", 250);
+        slotted.updateRecord(rids.get(1), grown);
+        slotted.updateRecord(rids.get(3), grown);
+        assertEquals(grown, slotted.getRecord(rids.get(1)));
+        assertEquals(grown, slotted.getRecord(rids.get(3)));
+
+        Record small = stringsRecord(strings, "z", 225);
+        assertEquals(rids.get(0), slotted.addRecord(small));
+        assertEquals(rids.get(2), slotted.addRecord(small));
+        slotted.updateRecord(rids.get(0), grown);
+        try {
+            slotted.updateRecord(rids.get(2), grown);
+            fail();
+        } catch (DatabaseException e) {
+            // 4 records of 1008 bytes do not fit in a page
+        }
+        assertEquals(small, slotted.getRecord(rids.get(2)));
+        assertEquals(grown, slotted.getRecord(rids.get(0)));
+    }
+
+    @Test
+    public void testDictionaryEncodedColumns() {
+        PageDirectory dataPageDirectory = createPageDirectory();
+        PageDirectory dictPageDirectory = createPageDirectory();
+        List<String> encoded = List.of("first name", "last name");
+        Table dict = new Table(TABLENAME, dataPageDirectory, schema, TableFormat.FIXED,
+                new ColumnDictionary(dictPageDirectory, schema, encoded));
+        // two 256-byte strings become two ints
+        assertTrue(dict.getNumRecordsPerPage() > 2 * table.getNumRecordsPerPage());
+
+        String[] names = {"Alice", "Bob", "Carol"};
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < dict.getNumRecordsPerPage() * 2; ++i) {
+            records.add(TestUtils.createRecordWithAllTypes(i).withValue(2, new StringDataBox(names[i % 3], 256)));
+        }
+        List<RecordId> rids = dict.addRecords(records.iterator());
+        assertEquals(2, dataPageDirectory.getNumDataPages());
+        assertEquals(records.get(4), dict.getRecord(rids.get(4)));
+
+        // reopen: the dictionary is read back from its pages
+        Table reopened = new Table(TABLENAME, dataPageDirectory, schema, TableFormat.FIXED,
+                new ColumnDictionary(dictPageDirectory, schema, encoded));
+        BacktrackingIterator<Record> iter = reopened.iterator();
+        for (Record expected : records) {
+            assertEquals(expected, iter.next());
+        }
+        assertFalse(iter.hasNext());
+
+        iter = reopened.scanEquals("first name", new StringDataBox("Bob", 256));
+        int numBobs = 0;
+        while (iter.hasNext()) {
+            assertEquals("Bob", iter.next().getString(2));
+            numBobs++;
+        }
+        assertEquals(records.size() / 3, numBobs);
+        assertFalse(reopened.scanEquals("first name", new StringDataBox("Dave", 256)).hasNext());
+
+        reopened.updateRecord(rids.get(0), records.get(0).withValue(3, new StringDataBox("Queen", 256)));
+        assertEquals("Queen", reopened.getRecord(rids.get(0)).getString(3));
+        assertEquals(1, reopened.deleteRecordsWhere(r -> r.getString(3).equals("Queen")));
+    }
+
+    @Test
+    public void testReadField() {
+        Schema numbers = new Schema().add("a", Type.fromInt()).add("b", Type.fromLong());
+        for (TableFormat format : TableFormat.values()) {
+            for (Schema s : List.of(schema, numbers)) {
+                Table t = new Table(TABLENAME, createPageDirectory(), s, format);
+                Record record = s == schema ? TestUtils.createRecordWithAllTypes(7)
+                        : new Record(new IntDataBox(7), new LongDataBox(8L));
+                t.addRecord(record);
+                RecordId rid = t.addRecord(record);
+                for (int i = 0; i < s.size(); ++i) {
+                    assertEquals(record.getValue(i), t.readField(rid, i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOverflowColumns() throws Exception {
+        Schema documents = new Schema().add("id", Type.fromInt()).add("body", Type.fromLong());
+        Table t = new Table(TABLENAME, createPageDirectory(), documents, TableFormat.PAX);
+        t.enableOverflow(List.of("body"));
+        OverflowStore store = t.getOverflowStore();
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; body.length() < 3 * BufferManager.EFFECTIVE_PAGE_SIZE; ++i) {
+            body.append(i).append(',');
+        }
+        long pointer = store.write(body.toString());
+        RecordId rid = t.addRecord(new Record(new IntDataBox(1), new LongDataBox(pointer)));
+        RecordId empty = t.addRecord(new Record(new IntDataBox(2), new LongDataBox(DiskSpaceManager.INVALID_PAGE_NUM)));
+
+        try (InputStream in = t.openValue(rid, "body")) {
+            assertEquals(body.toString(), new String(in.readAllBytes()));
+        }
+        assertThrows(DatabaseException.class, () -> t.openValue(empty, "body"));
+        BacktrackingIterator<Record> ids = t.projectedIterator(List.of("id"));
+        assertEquals(1, ids.next().getInt(0));
+
+        // keeping the pointer keeps the chain, replacing it frees the chain
+        t.updateRecord(rid, new Record(new IntDataBox(3), new LongDataBox(pointer)));
+        assertEquals(body.length(), store.length(pointer));
+        long replacement = store.write("replacement");
+        t.updateRecord(rid, new Record(new IntDataBox(3), new LongDataBox(replacement)));
+        assertThrows(PageException.class, () -> store.length(pointer));
+        assertEquals("replacement", store.readString(replacement));
+
+        t.deleteRecord(rid);
+        assertThrows(PageException.class, () -> store.length(replacement));
+        t.deleteRecord(empty);
+
+        assertThrows(IllegalArgumentException.class, () -> t.enableOverflow(List.of("id")));
+    }
+
+    @Test
+    public void testTruncateAndDrop() {
+        DiskSpaceManager diskSpaceManager = new MockDiskSpaceManager();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, 1024);
+        int partNum = diskSpaceManager.allocPart(2);
+        Page header = bufferManager.fetchNewPage(partNum);
+        header.unpin();
+        PageDirectory pgDir = new PageDirectory(bufferManager, partNum, header.getPageNum());
+        Table t = new Table(TABLENAME, pgDir, schema);
+        for (int i = 0; i < t.getNumRecordsPerPage() * 100; ++i) {
+            t.addRecord(TestUtils.createRecordWithAllTypes(i));
+        }
+        assertEquals(100, pgDir.getNumDataPages());
+
+        t.truncate();
+        assertEquals(0, pgDir.getNumDataPages());
+        assertFalse(t.iterator().hasNext());
+        Record record = TestUtils.createRecordWithAllTypes(1);
+        RecordId rid = t.addRecord(record);
+        assertEquals(record, t.getRecord(rid));
+
+        // the page directory is still found from its first header page
+        Table reloaded = new Table(TABLENAME, new PageDirectory(bufferManager, partNum, header.getPageNum()), schema);
+        assertEquals(1, reloaded.iterator().next().getInt(1));
+
+        t.drop();
+        assertThrows(NoSuchElementException.class, () -> diskSpaceManager.freePart(partNum));
+    }
+
+    @Test
+    public void testZoneMapSkipsPages() {
+        Schema series = new Schema().add("ts", Type.fromLong()).add("v", Type.fromInt());
+        PageDirectory pgDir = createPageDirectory();
+        Table t = new Table(TABLENAME, pgDir, series);
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < t.getNumRecordsPerPage() * 10; ++i) {
+            records.add(new Record(new LongDataBox(i), new IntDataBox(i % 7)));
+        }
+        int half = records.size() / 2;
+        t.addRecords(records.subList(0, half).iterator());
+        t.createZoneMap(List.of("ts"));
+        t.addRecords(records.subList(half, records.size() - 1).iterator());
+        t.addRecord(records.get(records.size() - 1));
+
+        long threshold = records.size() - 10;
+        BufferPoolStats.Snapshot before = bufferManager.getStats().snapshot();
+        List<Record> matched = new ArrayList<>();
+        t.scanRange("ts", PredicateOperator.GREATER_THAN_EQUALS, new LongDataBox(threshold)).forEachRemaining(matched::add);
+        BufferPoolStats.Snapshot after = bufferManager.getStats().snapshot();
+        assertEquals(records.subList(records.size() - 10, records.size()), matched);
+        long fetches = after.getHits() + after.getMisses() - before.getHits() - before.getMisses();
+        assertTrue(fetches <= 2);
+
+        // updates widen the range of their page, and columns without a range are scanned in full
+        RecordId first = new RecordId(pgDir.getDataPageNums()[0], (short) 0);
+        t.updateRecord(first, new Record(new LongDataBox(records.size() * 2L), new IntDataBox(0)));
+        assertEquals(1, count(t.scanRange("ts", PredicateOperator.GREATER_THAN, new LongDataBox(records.size()))));
+        assertEquals(records.stream().filter(r -> r.getInt(1) == 3).count(),
+                count(t.scanRange("v", PredicateOperator.EQUALS, new IntDataBox(3))));
+        assertEquals(0, count(t.scanRange("ts", PredicateOperator.LESS_THAN, new LongDataBox(0))));
+    }
+
+    private static long count(Iterator<Record> records) {
+        long count = 0;
+        while (records.hasNext()) {
+            records.next();
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testRecordCache() {
+        table.enableRecordCache(2);
+        List<RecordId> rids = new ArrayList<>();
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            records.add(TestUtils.createRecordWithAllTypes(i));
+            rids.add(table.addRecord(records.get(i)));
+        }
+
+        Record first = table.getRecord(rids.get(0));
+        assertSame(first, table.getRecord(rids.get(0)));
+        table.getRecord(rids.get(1));
+        table.getRecord(rids.get(2));
+        // the least recently used record was evicted
+        assertNotSame(first, table.getRecord(rids.get(0)));
+
+        Record updated = TestUtils.createRecordWithAllTypes(42);
+        table.updateRecord(rids.get(0), updated);
+        assertEquals(updated, table.getRecord(rids.get(0)));
+        table.deleteRecord(rids.get(0));
+        assertThrows(DatabaseException.class, () -> table.getRecord(rids.get(0)));
+
+        // a read that started before an invalidation of its record does not fill the cache
+        RecordCache cache = new RecordCache(2);
+        long version = cache.getVersion(rids.get(1));
+        cache.invalidate(rids.get(1));
+        cache.put(rids.get(1), records.get(1), version);
+        assertNull(cache.get(rids.get(1)));
+        cache.put(rids.get(1), records.get(1), cache.getVersion(rids.get(1)));
+        assertSame(records.get(1), cache.get(rids.get(1)));
+    }
+
+    @Test
+    public void testBatchIterator() {
+        Schema series = new Schema().add("ts", Type.fromLong()).add("name", Type.fromString(8));
+        Table t = new Table(TABLENAME, createPageDirectory(), series);
+        List<Record> records = new ArrayList<>();
+        long sum = 0;
+        for (int i = 0; i < 2500; ++i) {
+            records.add(new Record(new LongDataBox(i), new StringDataBox("r" + i, 8)));
+            sum += i;
+        }
+        t.addRecords(records.iterator());
+
+        List<Integer> sizes = new ArrayList<>();
+        long batchSum = 0;
+        Iterator<RecordBatch> batches = t.batchIterator(1024);
+        while (batches.hasNext()) {
+            RecordBatch batch = batches.next();
+            sizes.add(batch.getNumRows());
+            long[] ts = batch.getLongColumn(0);
+            for (int i = 0; i < batch.getNumSelected(); ++i) {
+                batchSum += ts[batch.getSelection()[i]];
+            }
+        }
+        assertEquals(List.of(1024, 1024, 452), sizes);
+        assertEquals(sum, batchSum);
+
+        // selection vectors narrow the rows seen through the record adapter
+        Iterator<RecordBatch> filtered = new Iterator<>() {
+            private final Iterator<RecordBatch> source = t.batchIterator(100);
+
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public RecordBatch next() {
+                RecordBatch batch = source.next();
+                long[] ts = batch.getLongColumn(0);
+                batch.filter(row -> ts[row] % 10 == 0);
+                return batch;
+            }
+        };
+        List<Record> expected = records.stream().filter(r -> r.getLong(0) % 10 == 0).collect(Collectors.toList());
+        List<Record> actual = new ArrayList<>();
+        RecordBatch.records(filtered).forEachRemaining(actual::add);
+        assertEquals(expected, actual);
+
+        List<Record> roundTrip = new ArrayList<>();
+        RecordBatch.records(RecordBatch.batches(records.iterator(), series, 64)).forEachRemaining(roundTrip::add);
+        assertEquals(records, roundTrip);
+        assertThrows(RuntimeException.class, () -> new RecordBatch(series).getIntColumn(0));
+    }
+
+    @Test
+    public void testBatchIteratorFormats() {
+        Schema schema = TestUtils.createSchemaWithAllTypes();
+        for (TableFormat format : TableFormat.values()) {
+            Table t = new Table(TABLENAME, createPageDirectory(), schema, format);
+            List<RecordId> rids = new ArrayList<>();
+            for (int i = 0; i < 100; ++i) {
+                rids.add(t.addRecord(TestUtils.createRecordWithAllTypes(i)));
+            }
+            // batches resume in the middle of pages, and skip deleted slots
+            List<Record> expected = new ArrayList<>();
+            for (int i = 0; i < rids.size(); ++i) {
+                Record record = t.getRecord(rids.get(i));
+                if (i % 3 == 0) {
+                    t.deleteRecord(rids.get(i));
+                } else {
+                    expected.add(record);
+                }
+            }
+            List<Record> actual = new ArrayList<>();
+            Iterator<RecordBatch> batches = t.batchIterator(7);
+            while (batches.hasNext()) {
+                RecordBatch batch = batches.next();
+                assertTrue(batch.getNumRows() > 0 && batch.getNumRows() <= 7);
+                batch.forEach(actual::add);
+            }
+            assertEquals(format.toString(), expected, actual);
+
+            // marks go back to batches already read
+            BacktrackingIterator<Record> iter = RecordBatch.records(t.batchIterator(7));
+            for (int i = 0; i < 10; ++i) {
+                iter.next();
+            }
+            iter.markPrev();
+            while (iter.hasNext()) {
+                iter.next();
+            }
+            iter.reset();
+            List<Record> rest = new ArrayList<>();
+            iter.forEachRemaining(rest::add);
+            assertEquals(expected.subList(9, expected.size()), rest);
+        }
+    }
+
+    @Test
+    public void testConcurrentInserts() throws Exception {
+        Schema rows = new Schema().add("thread", Type.fromInt()).add("i", Type.fromInt()).add("name", Type.fromString(16));
+        int numThreads = 8;
+        int numRecords = 500;
+        for (TableFormat format : TableFormat.values()) {
+            Table t = new Table(TABLENAME, createPageDirectory(), rows, format);
+            List<List<RecordId>> rids = new ArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int n = 0; n < numThreads; ++n) {
+                int thread = n;
+                List<RecordId> threadRids = new ArrayList<>();
+                rids.add(threadRids);
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < numRecords; ++i) {
+                        threadRids.add(t.addRecord(new Record(new IntDataBox(thread), new IntDataBox(i), new StringDataBox("row" + i, 16))));
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            Set<RecordId> distinct = new HashSet<>();
+            for (int n = 0; n < numThreads; ++n) {
+                for (int i = 0; i < numRecords; ++i) {
+                    RecordId rid = rids.get(n).get(i);
+                    assertTrue(distinct.add(rid));
+                    assertEquals(new Record(new IntDataBox(n), new IntDataBox(i), new StringDataBox("row" + i, 16)), t.getRecord(rid));
+                }
+            }
+            assertEquals(numThreads * numRecords, count(t.iterator()));
+
+            // threads that inserted once and stay idle do not force new pages on the others
+            PageDirectory idlePageDirectory = createPageDirectory();
+            Table idle = new Table(TABLENAME, idlePageDirectory, rows, format);
+            CountDownLatch done = new CountDownLatch(1);
+            List<Thread> idleThreads = new ArrayList<>();
+            for (int n = 0; n < numThreads; ++n) {
+                int thread = n;
+                CountDownLatch inserted = new CountDownLatch(1);
+                Thread idleThread = new Thread(() -> {
+                    idle.addRecord(new Record(new IntDataBox(thread), new IntDataBox(0), new StringDataBox("row", 16)));
+                    inserted.countDown();
+                    try {
+                        done.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                idleThreads.add(idleThread);
+                idleThread.start();
+                inserted.await();
+            }
+            assertEquals(1, idlePageDirectory.getNumDataPages());
+            done.countDown();
+            for (Thread thread : idleThreads) {
+                thread.join();
+            }
+        }
+    }
+}